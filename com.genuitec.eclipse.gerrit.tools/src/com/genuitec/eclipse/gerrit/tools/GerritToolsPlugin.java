@@ -14,6 +14,7 @@ import org.eclipse.jface.resource.ImageRegistry;
 import org.osgi.framework.BundleContext;
 
 import com.genuitec.eclipse.gerrit.tools.utils.AbstractGenuitecUIPlugin;
+import com.genuitec.eclipse.gerrit.tools.utils.GerritUtils;
 
 /**
  * The activator class controls the plug-in life cycle
@@ -46,6 +47,11 @@ public class GerritToolsPlugin extends AbstractGenuitecUIPlugin {
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
 		plugin = this;
+		try {
+			GerritUtils.startRepositoryManagerInitialization();
+		} catch (LinkageError e) {
+			//Mylyn is not installed
+		}
 	}
 
 	/*
@@ -99,6 +99,12 @@ public abstract class SettingsDialog extends Dialog {
         return Status.OK_STATUS;
     }
     
+    /**
+     * Called when value of a setting is modified by the user, before the settings are validated.
+     */
+    protected void settingChanged(String property) {
+    }
+    
     public final void revalidate() {
     	int maxSeverity = IStatus.OK;
     	for (Entry<String, Object> entry: settings.entrySet()) {
@@ -154,6 +160,7 @@ public abstract class SettingsDialog extends Dialog {
             
             public void widgetSelected(SelectionEvent e) {
                 settings.put(property, btn.getSelection());
+                settingChanged(property);
                 revalidate();
             }
             
@@ -186,6 +193,7 @@ public abstract class SettingsDialog extends Dialog {
         text.addModifyListener(new ModifyListener() {
             public void modifyText(ModifyEvent e) {
                 settings.put(property, text.getText());
+                settingChanged(property);
                 revalidate();
             }
         });
@@ -209,6 +217,7 @@ public abstract class SettingsDialog extends Dialog {
         combo.addModifyListener(new ModifyListener() {
             public void modifyText(ModifyEvent e) {
                 settings.put(property, combo.getText());
+                settingChanged(property);
                 revalidate();
             }
         });
@@ -0,0 +1,121 @@
+/**
+ *  Copyright (c) 2015 Genuitec LLC.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Piotr Tomiak <piotr@genuitec.com> - initial API and implementation
+ */
+package com.genuitec.eclipse.gerrit.tools.internal.changes;
+
+/**
+ * Name of a change branch fetched from Gerrit. Such branches are named
+ * <code>refs/heads/changes/&lt;stable&gt;/&lt;change&gt;-&lt;title&gt;/&lt;patchset&gt;</code>.
+ */
+public final class ChangeBranch {
+
+	private final String name;
+	private final String stable;
+	private final int changeNumber;
+	private final int patchSet;
+
+	/**
+	 * @param name full name of the branch, or name relative to
+	 * 		<code>refs/heads/changes/</code>
+	 * @return parsed branch, or <code>null</code> if the branch has not been fetched
+	 * 		from Gerrit
+	 */
+	public static ChangeBranch parse(String name) {
+		String relative = name.startsWith(ChangeBranchTree.CHANGES_PREFIX) ?
+				name.substring(ChangeBranchTree.CHANGES_PREFIX.length()) : name;
+		int psPos = relative.lastIndexOf('/');
+		if (psPos <= 0) {
+			return null;
+		}
+		int changePos = relative.lastIndexOf('/', psPos - 1);
+		if (changePos <= 0) {
+			return null;
+		}
+		int patchSet = parseNumber(relative.substring(psPos + 1));
+		String change = relative.substring(changePos + 1, psPos);
+		int dashPos = change.indexOf('-');
+		int changeNumber = parseNumber(dashPos > 0 ? change.substring(0, dashPos) : change);
+		if (patchSet <= 0 || changeNumber <= 0) {
+			return null;
+		}
+		return new ChangeBranch(ChangeBranchTree.CHANGES_PREFIX + relative,
+				relative.substring(0, changePos), changeNumber, patchSet);
+	}
+
+	/**
+	 * @return full name of the local branch for a patchset of a change submitted to the stable branch
+	 */
+	public static String getRefName(String stable, int changeNumber, String title, int patchSet) {
+		return ChangeBranchTree.CHANGES_PREFIX + stable + "/" + changeNumber //$NON-NLS-1$
+				+ "-" + convertToBranchName(title) + "/" + patchSet; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static String convertToBranchName(String name) {
+		StringBuilder sb = new StringBuilder(name.length());
+		for(int i = 0; i < name.length() && i < 30; i++) {
+			char ch = name.charAt(i);
+			if (ch < 40 
+					|| ch == '~' || ch == '^' || ch == ':' || ch == 177 
+					|| ch == '?' || ch == '*' || ch == '/' || ch == '\\'
+					|| ch == '.' || ch == '@' || ch == ' ') {
+				sb.append('_');
+			} else if (ch == '[') {
+				sb.append('(');
+			} else if (ch == ']') {
+				sb.append(')');
+			} else {
+				sb.append(ch);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static int parseNumber(String str) {
+		if (str.length() == 0 || str.length() > 9) {
+			return -1;
+		}
+		for (int i = 0; i < str.length(); i++) {
+			if (!Character.isDigit(str.charAt(i))) {
+				return -1;
+			}
+		}
+		return Integer.parseInt(str);
+	}
+
+	private ChangeBranch(String name, String stable, int changeNumber, int patchSet) {
+		this.name = name;
+		this.stable = stable;
+		this.changeNumber = changeNumber;
+		this.patchSet = patchSet;
+	}
+
+	/**
+	 * @return full name of the branch
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return name of the stable branch the change has been submitted to
+	 */
+	public String getStableBranch() {
+		return stable;
+	}
+
+	public int getChangeNumber() {
+		return changeNumber;
+	}
+
+	public int getPatchSet() {
+		return patchSet;
+	}
+
+}
@@ -0,0 +1,198 @@
+/**
+ *  Copyright (c) 2015 Genuitec LLC.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Piotr Tomiak <piotr@genuitec.com> - initial API and implementation
+ */
+package com.genuitec.eclipse.gerrit.tools.internal.changes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import com.genuitec.eclipse.gerrit.tools.utils.RepositoryRefsCache;
+
+/**
+ * Classifies local change branches by whether they are still needed. All branches
+ * are classified within a single walk of the history, which starts from tips
+ * of change branches and stops at commits reachable from any <code>origin</code>
+ * branch. Only tips of branches which are not merged are produced by such walk,
+ * so the cost depends on the amount of unmerged history and not on the number
+ * of branches.
+ */
+public final class ChangeBranchClassifier {
+
+	public enum State {
+		/** Tip of the branch is reachable from a remote branch */
+		MERGED,
+		/** Branch holds an older patchset of a change, whose newer patchset is fetched as well */
+		OBSOLETE,
+		/** Branch holds commits, which are not available elsewhere */
+		UNIQUE
+	}
+
+	private static final String ORIGIN_PREFIX = "refs/remotes/origin/"; //$NON-NLS-1$
+	private static final int CANCEL_CHECK_INTERVAL = 1000;
+
+	private static final RepositoryRefsCache<Map<String, State>> cache =
+			new RepositoryRefsCache<Map<String, State>>("Classifying change branches") {
+		@Override
+		protected Map<String, State> compute(Repository repository) throws IOException {
+			return classify(repository, new NullProgressMonitor());
+		}
+
+		@Override
+		protected void invalidated(Repository repository) {
+			//classification is expensive, do it again only when requested
+		}
+	};
+
+	/**
+	 * Classifies change branches of the repository in background.
+	 */
+	public static void prefetch(Repository repository) {
+		if (cache.getIfPresent(repository) == null) {
+			cache.prefetch(Collections.singletonList(repository));
+		}
+	}
+
+	/**
+	 * @return states of change branches keyed by branch names relative to
+	 * 		<code>refs/heads/changes/</code>; a cached result is returned if available
+	 * @throws OperationCanceledException if the monitor has been cancelled
+	 */
+	public static Map<String, State> get(Repository repository, IProgressMonitor monitor) throws IOException {
+		Map<String, State> result = cache.getIfPresent(repository);
+		if (result == null) {
+			result = classify(repository, monitor);
+		}
+		return result;
+	}
+
+	/**
+	 * Classifies change branches of the repository.
+	 *
+	 * @return states of change branches keyed by branch names relative to
+	 * 		<code>refs/heads/changes/</code>
+	 * @throws OperationCanceledException if the monitor has been cancelled
+	 */
+	public static Map<String, State> classify(Repository repository, IProgressMonitor monitor) throws IOException {
+		monitor.beginTask("Classifying change branches", IProgressMonitor.UNKNOWN);
+		try {
+			Map<String, Ref> changeRefs = repository.getRefDatabase().getRefs(ChangeBranchTree.CHANGES_PREFIX);
+
+			//find the latest fetched patchset of every change
+			Map<Integer, Integer> latestPatchSets = new HashMap<Integer, Integer>();
+			for (String name: changeRefs.keySet()) {
+				ChangeBranch branch = ChangeBranch.parse(name);
+				if (branch != null) {
+					Integer latest = latestPatchSets.get(branch.getChangeNumber());
+					if (latest == null || latest < branch.getPatchSet()) {
+						latestPatchSets.put(branch.getChangeNumber(), branch.getPatchSet());
+					}
+				}
+			}
+
+			Set<String> unmerged = findUnmerged(repository, changeRefs, monitor);
+
+			Map<String, State> result = new HashMap<String, State>();
+			for (String name: changeRefs.keySet()) {
+				State state;
+				if (!unmerged.contains(name)) {
+					state = State.MERGED;
+				} else {
+					ChangeBranch branch = ChangeBranch.parse(name);
+					if (branch != null && latestPatchSets.get(branch.getChangeNumber()) > branch.getPatchSet()) {
+						state = State.OBSOLETE;
+					} else {
+						state = State.UNIQUE;
+					}
+				}
+				result.put(name, state);
+			}
+			return Collections.unmodifiableMap(result);
+		} finally {
+			monitor.done();
+		}
+	}
+
+	private static Set<String> findUnmerged(Repository repository, Map<String, Ref> changeRefs,
+			IProgressMonitor monitor) throws IOException {
+		Set<String> result = new HashSet<String>();
+		RevWalk walk = new RevWalk(repository);
+		try {
+			walk.setRetainBody(false);
+			Map<RevCommit, List<String>> tips = new HashMap<RevCommit, List<String>>();
+			for (Map.Entry<String, Ref> entry: changeRefs.entrySet()) {
+				RevCommit tip = parseCommit(walk, entry.getValue().getObjectId());
+				if (tip == null) {
+					//not a commit, never report it as merged
+					result.add(entry.getKey());
+					continue;
+				}
+				List<String> names = tips.get(tip);
+				if (names == null) {
+					names = new ArrayList<String>(1);
+					tips.put(tip, names);
+					walk.markStart(tip);
+				}
+				names.add(entry.getKey());
+			}
+			if (tips.isEmpty()) {
+				return result;
+			}
+			for (Ref ref: repository.getRefDatabase().getRefs(ORIGIN_PREFIX).values()) {
+				RevCommit commit = parseCommit(walk, ref.getObjectId());
+				if (commit != null) {
+					walk.markUninteresting(commit);
+				}
+			}
+			int count = 0;
+			for (RevCommit commit: walk) {
+				if (++count % CANCEL_CHECK_INTERVAL == 0 && monitor.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+				List<String> names = tips.remove(commit);
+				if (names != null) {
+					result.addAll(names);
+					if (tips.isEmpty()) {
+						break;
+					}
+				}
+			}
+		} finally {
+			walk.close();
+		}
+		return result;
+	}
+
+	private static RevCommit parseCommit(RevWalk walk, ObjectId id) throws IOException {
+		if (id == null) {
+			return null;
+		}
+		RevObject object = walk.peel(walk.parseAny(id));
+		return object instanceof RevCommit ? (RevCommit) object : null;
+	}
+
+	private ChangeBranchClassifier() {}
+
+}
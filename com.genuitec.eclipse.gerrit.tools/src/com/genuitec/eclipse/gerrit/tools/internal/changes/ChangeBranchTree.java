@@ -0,0 +1,118 @@
+/**
+ *  Copyright (c) 2015 Genuitec LLC.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Piotr Tomiak <piotr@genuitec.com> - initial API and implementation
+ */
+package com.genuitec.eclipse.gerrit.tools.internal.changes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jgit.lib.Repository;
+
+import com.genuitec.eclipse.gerrit.tools.utils.RepositoryRefsCache;
+
+/**
+ * Immutable snapshot of local change branches of a repository, grouped by
+ * stable branches. Snapshots are cached and rebuilt in background when refs
+ * of the repository change.
+ */
+public final class ChangeBranchTree {
+
+	public static final String CHANGES_PREFIX = "refs/heads/changes/"; //$NON-NLS-1$
+
+	private static final RepositoryRefsCache<ChangeBranchTree> cache =
+			new RepositoryRefsCache<ChangeBranchTree>("Reading change branches") {
+		@Override
+		protected ChangeBranchTree compute(Repository repository) throws IOException {
+			return new ChangeBranchTree(repository.getRefDatabase().getRefs(CHANGES_PREFIX).keySet(),
+					repository.getFullBranch());
+		}
+	};
+
+	/**
+	 * @return snapshot of change branches of the repository, reading refs if needed
+	 */
+	public static ChangeBranchTree get(Repository repository) throws IOException {
+		return cache.get(repository);
+	}
+
+	/**
+	 * @return snapshot of change branches of the repository, or <code>null</code> if it is
+	 * 		not available yet; in such case the snapshot is built in background
+	 */
+	public static ChangeBranchTree getIfAvailable(Repository repository) {
+		ChangeBranchTree tree = cache.getIfPresent(repository);
+		if (tree == null) {
+			cache.prefetch(Collections.singletonList(repository));
+		}
+		return tree;
+	}
+
+	private final SortedMap<String, List<String>> changesByStable;
+	private final String currentBranch;
+
+	private ChangeBranchTree(Set<String> changeBranches, String currentBranch) {
+		SortedMap<String, List<String>> map = new TreeMap<String, List<String>>();
+		for (String ref: changeBranches) {
+			IPath refPath = new Path(ref);
+			if (refPath.segmentCount() > 1) {
+				String stable;
+				if (refPath.segment(0).equals("features") && refPath.segmentCount() > 3) { //$NON-NLS-1$
+					stable = refPath.uptoSegment(3).toString();
+				} else {
+					stable = refPath.segment(0);
+				}
+				List<String> changes = map.get(stable);
+				if (changes == null) {
+					changes = new ArrayList<String>();
+					map.put(stable, changes);
+				}
+				changes.add(ref.substring(stable.length() + 1));
+			}
+		}
+		for (Map.Entry<String, List<String>> entry: map.entrySet()) {
+			Collections.sort(entry.getValue());
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		}
+		this.changesByStable = Collections.unmodifiableSortedMap(map);
+		this.currentBranch = currentBranch;
+	}
+
+	/**
+	 * @return sorted names of stable branches, which have change branches
+	 */
+	public Set<String> getStableBranches() {
+		return changesByStable.keySet();
+	}
+
+	/**
+	 * @return sorted names of change branches of the stable branch, relative
+	 * 		to <code>refs/heads/changes/&lt;stable&gt;/</code>
+	 */
+	public List<String> getChanges(String stable) {
+		List<String> changes = changesByStable.get(stable);
+		return changes != null ? changes : Collections.<String>emptyList();
+	}
+
+	/**
+	 * @return full name of the branch checked out at the time of the snapshot
+	 */
+	public String getCurrentBranch() {
+		return currentBranch;
+	}
+
+}
@@ -0,0 +1,164 @@
+/**
+ *  Copyright (c) 2015 Genuitec LLC.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Piotr Tomiak <piotr@genuitec.com> - initial API and implementation
+ */
+package com.genuitec.eclipse.gerrit.tools.internal.changes;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.mylyn.internal.gerrit.core.client.GerritClient;
+import org.eclipse.mylyn.internal.gerrit.core.client.rest.ChangeInfo;
+import org.eclipse.mylyn.internal.gerrit.core.client.rest.RevisionInfo;
+
+import com.genuitec.eclipse.gerrit.tools.GerritToolsPlugin;
+
+/**
+ * Resolves the latest patchset number of Gerrit changes. Requests are executed
+ * on a small thread pool, so that number of concurrent requests to Gerrit
+ * is limited, and every change is requested at most once. Results are published
+ * as futures, so callers can wait for the particular change they are interested in.
+ * <p>
+ * Pending requests are served in the reverse order of requesting, so the change
+ * the user has picked most recently is always resolved first.
+ */
+@SuppressWarnings("restriction")
+public class ChangeDetailsLoader {
+
+	/**
+	 * Preference holding maximum number of change details requested from Gerrit at the same time.
+	 */
+	public static final String PREF_MAX_REQUESTS = "changes.details.maxRequests"; //$NON-NLS-1$
+	public static final int DEFAULT_MAX_REQUESTS = 4;
+
+	private final GerritClient client;
+	private final GerritChangeIndex index;
+	private final ThreadPoolExecutor executor;
+	private final ConcurrentMap<Integer, LoadTask> results = new ConcurrentHashMap<Integer, LoadTask>();
+	private final AtomicLong requestCounter = new AtomicLong();
+
+	public ChangeDetailsLoader(GerritClient client, GerritChangeIndex index) {
+		this(client, index, InstanceScope.INSTANCE.getNode(GerritToolsPlugin.PLUGIN_ID)
+				.getInt(PREF_MAX_REQUESTS, DEFAULT_MAX_REQUESTS));
+	}
+
+	public ChangeDetailsLoader(GerritClient client, GerritChangeIndex index, int maxRequests) {
+		this.client = client;
+		this.index = index;
+		int threads = Math.max(1, maxRequests);
+		executor = new ThreadPoolExecutor(threads, threads, 5, TimeUnit.SECONDS,
+				new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "Gerrit change details loader"); //$NON-NLS-1$
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Requests the latest patchset number of a change. Subsequent calls for
+	 * the same change return the same future, until the change is invalidated.
+	 * If the request is still waiting for execution, it is moved to the front
+	 * of the queue.
+	 */
+	public Future<Integer> request(final int changeNumber) {
+		LoadTask task = results.get(changeNumber);
+		if (task != null && task.failed) {
+			//retry failed requests
+			results.remove(changeNumber, task);
+			task = null;
+		}
+		if (task == null) {
+			LoadTask newTask = new LoadTask(changeNumber);
+			task = results.putIfAbsent(changeNumber, newTask);
+			if (task == null) {
+				newTask.priority = requestCounter.incrementAndGet();
+				executor.execute(newTask);
+				return newTask;
+			}
+		}
+		//priority can be changed only while the task is out of the queue
+		if (executor.remove(task)) {
+			task.priority = requestCounter.incrementAndGet();
+			executor.execute(task);
+		}
+		return task;
+	}
+
+	/**
+	 * Forgets the result for a change, e.g. because a new patchset has been uploaded.
+	 */
+	public void invalidate(int changeNumber) {
+		LoadTask result = results.remove(changeNumber);
+		if (result != null) {
+			result.cancel(false);
+		}
+	}
+
+	/**
+	 * Stops all pending requests.
+	 */
+	public void dispose() {
+		executor.shutdownNow();
+		for (LoadTask result: results.values()) {
+			result.cancel(true);
+		}
+	}
+
+	private Integer load(int changeNumber) throws Exception {
+		ChangeInfo ci = client.getChangeInfo(changeNumber, new NullProgressMonitor());
+		int max = 1;
+		for (RevisionInfo ri: ci.getRevisions().values()) {
+			if (ri.getNumber() > max) {
+				max = ri.getNumber();
+			}
+		}
+		index.setPatchSetCount(changeNumber, max);
+		return max;
+	}
+
+	private class LoadTask extends FutureTask<Integer> implements Comparable<LoadTask> {
+
+		private volatile long priority;
+		private volatile boolean failed;
+
+		public LoadTask(final int changeNumber) {
+			super(new Callable<Integer>() {
+				public Integer call() throws Exception {
+					return load(changeNumber);
+				}
+			});
+		}
+
+		@Override
+		protected void setException(Throwable t) {
+			failed = true;
+			super.setException(t);
+		}
+
+		public int compareTo(LoadTask o) {
+			//most recently requested first
+			return priority > o.priority ? -1 : (priority < o.priority ? 1 : 0);
+		}
+
+	}
+
+}
@@ -0,0 +1,511 @@
+/**
+ *  Copyright (c) 2015 Genuitec LLC.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Piotr Tomiak <piotr@genuitec.com> - initial API and implementation
+ */
+package com.genuitec.eclipse.gerrit.tools.internal.changes;
+
+import static com.genuitec.eclipse.gerrit.tools.utils.XMLUtils.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.mylyn.internal.gerrit.core.client.GerritClient;
+import org.eclipse.mylyn.internal.gerrit.core.client.GerritException;
+import org.eclipse.mylyn.internal.gerrit.core.client.data.GerritQueryResult;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.genuitec.eclipse.gerrit.tools.GerritToolsPlugin;
+import com.genuitec.eclipse.gerrit.tools.utils.GerritUtils;
+
+/**
+ * On-disk index of open changes of a single Gerrit project. The index is stored
+ * in the plugin state location and is refreshed incrementally - only changes
+ * modified since the last synchronization are requested from Gerrit. All open changes
+ * are requested once a day, or when an incremental query cannot be completed.
+ */
+@SuppressWarnings("restriction")
+public class GerritChangeIndex {
+
+	private static final String ELEM_CHANGES = "changes"; //$NON-NLS-1$
+	private static final String ELEM_CHANGE = "change"; //$NON-NLS-1$
+
+	private static final String ATTR_URL = "url"; //$NON-NLS-1$
+	private static final String ATTR_PROJECT = "project"; //$NON-NLS-1$
+	private static final String ATTR_LAST_SYNC = "last-sync"; //$NON-NLS-1$
+	private static final String ATTR_PAGE_LIMIT = "page-limit"; //$NON-NLS-1$
+	private static final String ATTR_NUMBER = "number"; //$NON-NLS-1$
+	private static final String ATTR_SUBJECT = "subject"; //$NON-NLS-1$
+	private static final String ATTR_BRANCH = "branch"; //$NON-NLS-1$
+	private static final String ATTR_OWNER = "owner"; //$NON-NLS-1$
+	private static final String ATTR_UPDATED = "updated"; //$NON-NLS-1$
+	private static final String ATTR_PATCHSETS = "patchsets"; //$NON-NLS-1$
+
+	/**
+	 * Number of seconds by which consecutive synchronization windows overlap,
+	 * so that changes are not missed because of clock differences.
+	 */
+	private static final long SYNC_OVERLAP = 120;
+
+	/**
+	 * Maximum number of changes requested with a single query. Gerrit may limit
+	 * the number of results further, depending on the query limit of the user,
+	 * so the actual limit is learned from the pages returned by the server.
+	 */
+	private static final int QUERY_LIMIT = 500;
+
+	/**
+	 * Delay in milliseconds, by which storing of patchset counts is postponed,
+	 * so that details of several changes are stored at once.
+	 */
+	private static final long SAVE_DELAY = 5000;
+
+	/**
+	 * Time in milliseconds after which the index is rebuilt from all open changes,
+	 * instead of being refreshed incrementally.
+	 */
+	private static final long FULL_SYNC_INTERVAL = 24 * 60 * 60 * 1000L;
+
+	private static final Map<String, GerritChangeIndex> indexes = new HashMap<String, GerritChangeIndex>();
+
+	private final String gerritUrl;
+	private final String project;
+	private final File file;
+	private final Map<Integer, Change> changes = new HashMap<Integer, Change>();
+	private long lastSync;
+	private int pageLimit = QUERY_LIMIT;
+	private boolean dirty;
+	private final Job saveJob = new Job("Storing index of Gerrit changes") {
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			synchronized (GerritChangeIndex.this) {
+				if (dirty) {
+					save();
+				}
+			}
+			return Status.OK_STATUS;
+		}
+	};
+
+	public static GerritChangeIndex getIndex(String gerritUrl, String project) {
+		String key = gerritUrl + " " + project; //$NON-NLS-1$
+		synchronized (indexes) {
+			GerritChangeIndex index = indexes.get(key);
+			if (index == null) {
+				index = new GerritChangeIndex(gerritUrl, project);
+				indexes.put(key, index);
+			}
+			return index;
+		}
+	}
+
+	private GerritChangeIndex(String gerritUrl, String project) {
+		this.gerritUrl = gerritUrl;
+		this.project = project;
+		this.file = GerritToolsPlugin.getDefault().getStateLocation().append(ELEM_CHANGES)
+				.append(toFileName(gerritUrl + "_" + project) + ".xml").toFile(); //$NON-NLS-1$ //$NON-NLS-2$
+		saveJob.setSystem(true);
+		load();
+	}
+
+	/**
+	 * @return <code>true</code> if the index has been synchronized with Gerrit at least once
+	 */
+	public synchronized boolean isSynchronized() {
+		return lastSync > 0;
+	}
+
+	/**
+	 * @return open changes, most recently updated first
+	 */
+	public synchronized List<Change> getChanges() {
+		List<Change> result = new ArrayList<Change>(changes.values());
+		Collections.sort(result, new Comparator<Change>() {
+			@Override
+			public int compare(Change o1, Change o2) {
+				if (o1.updated != o2.updated) {
+					return o1.updated > o2.updated ? -1 : 1;
+				}
+				return o2.number - o1.number;
+			}
+		});
+		return result;
+	}
+
+	public synchronized Change getChange(int number) {
+		return changes.get(number);
+	}
+
+	/**
+	 * Remembers the number of patchsets of a change, so that details
+	 * don't need to be fetched again until the change is updated. The index
+	 * is stored after a short delay, together with other updated changes.
+	 */
+	public synchronized void setPatchSetCount(int number, int patchSets) {
+		Change change = changes.get(number);
+		if (change != null && change.patchSets != patchSets) {
+			changes.put(number, new Change(change, patchSets));
+			dirty = true;
+			saveJob.schedule(SAVE_DELAY);
+		}
+	}
+
+	/**
+	 * Requests changes modified since the last synchronization and merges them into the index.
+	 * If the index has never been synchronized, the last synchronization is too old, or the
+	 * incremental query cannot be completed, all open changes are requested. Changes of the
+	 * index, which are not among them, are dropped only after Gerrit confirms they have been
+	 * closed or deleted. The time of the last synchronization advances only after a complete pass.
+	 *
+	 * @return <code>true</code> if the index has been modified
+	 */
+	public boolean synchronize(GerritClient client, IProgressMonitor m) throws GerritException {
+		SubMonitor monitor = SubMonitor.convert(m, 3);
+		long start = System.currentTimeMillis();
+		long since;
+		synchronized (this) {
+			since = lastSync;
+		}
+		Map<Integer, GerritQueryResult> results = new LinkedHashMap<Integer, GerritQueryResult>();
+		boolean full = true;
+		if (since > 0 && start - since < FULL_SYNC_INTERVAL) {
+			long age = Math.max(0, start - since) / 1000 + SYNC_OVERLAP;
+			full = !queryChanges(client, "-age:" + age + "s project:" + project, //$NON-NLS-1$ //$NON-NLS-2$
+					results, monitor.newChild(1));
+		}
+		boolean complete = true;
+		if (full) {
+			results.clear();
+			complete = queryChanges(client, "status:open project:" + project, //$NON-NLS-1$
+					results, monitor.newChild(1));
+		}
+
+		boolean modified = merge(results.values());
+		Set<Integer> missing = new HashSet<Integer>();
+		if (full) {
+			synchronized (this) {
+				missing.addAll(changes.keySet());
+			}
+			missing.removeAll(results.keySet());
+		}
+		if (!missing.isEmpty()) {
+			//the list of open changes may be incomplete, so every missing change is checked
+			Map<Integer, String> statuses = GerritUtils.getChangeStatuses(client, missing, monitor.newChild(1));
+			synchronized (this) {
+				for (Integer number: missing) {
+					String status = statuses.get(number);
+					if (status == null || isClosed(status)) {
+						modified |= changes.remove(number) != null;
+					}
+				}
+			}
+		}
+		synchronized (this) {
+			if (complete) {
+				lastSync = start;
+			}
+			if (modified || complete || dirty) {
+				save();
+			}
+		}
+		return modified;
+	}
+
+	private synchronized boolean merge(Collection<GerritQueryResult> results) {
+		boolean modified = false;
+		for (GerritQueryResult res: results) {
+			Change existing = changes.get(res.getNumber());
+			if (isClosed(res.getStatus())) {
+				modified |= changes.remove(res.getNumber()) != null;
+			} else {
+				Change change = new Change(res, existing);
+				if (!change.equals(existing)) {
+					changes.put(change.number, change);
+					modified = true;
+				}
+			}
+		}
+		return modified;
+	}
+
+	/**
+	 * Requests all changes matching the query. Changes are returned by Gerrit most recently
+	 * updated first, so every next page is requested with <code>until:</code> set to the
+	 * update time of the oldest change of the previous page. Gerrit may return less changes
+	 * than requested, so a page is known to be the last one only if it is smaller than
+	 * the previous page, or if it brings no new changes.
+	 *
+	 * @return <code>false</code> if not all matching changes could be requested
+	 */
+	private boolean queryChanges(GerritClient client, String baseQuery, Map<Integer, GerritQueryResult> result,
+			SubMonitor monitor) throws GerritException {
+		String until = null;
+		int previousPage = 0;
+		while (true) {
+			monitor.setWorkRemaining(10);
+			if (monitor.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+			String query = baseQuery + " limit:" + QUERY_LIMIT; //$NON-NLS-1$
+			if (until != null) {
+				query += " until:\"" + until + "\""; //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			List<GerritQueryResult> page = GerritUtils.executeQuery(client, query, monitor.newChild(1));
+			boolean progress = false;
+			Date oldest = null;
+			for (GerritQueryResult res: page) {
+				progress |= result.put(res.getNumber(), res) == null;
+				Date updated = res.getUpdated();
+				if (updated != null && (oldest == null || updated.before(oldest))) {
+					oldest = updated;
+				}
+			}
+			if (progress && previousPage > 0) {
+				//the previous page was truncated, so its size is the limit of the server
+				learnPageLimit(previousPage);
+			}
+			if (page.isEmpty() || page.size() < previousPage) {
+				return true;
+			}
+			if (!progress) {
+				//a page with no new changes is the last one, unless the server has truncated it,
+				//because more changes have been updated within the same second
+				return page.size() < getPageLimit();
+			}
+			if (oldest == null) {
+				return false;
+			}
+			previousPage = page.size();
+			//timestamps are matched with a precision of seconds, so pages overlap
+			SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss Z", Locale.ENGLISH); //$NON-NLS-1$
+			until = format.format(oldest);
+		}
+	}
+
+	private synchronized int getPageLimit() {
+		return pageLimit;
+	}
+
+	private synchronized void learnPageLimit(int limit) {
+		if (limit < pageLimit) {
+			pageLimit = limit;
+			dirty = true;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the Gerrit change status denotes a merged or abandoned change
+	 */
+	public static boolean isClosed(String status) {
+		return "MERGED".equals(status) || "ABANDONED".equals(status); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static String toFileName(String name) {
+		StringBuilder sb = new StringBuilder(name.length());
+		for (int i = 0; i < name.length(); i++) {
+			char ch = name.charAt(i);
+			sb.append(Character.isLetterOrDigit(ch) || ch == '-' || ch == '.' ? ch : '_');
+		}
+		return sb.toString();
+	}
+
+	private synchronized void load() {
+		if (!file.isFile()) {
+			return;
+		}
+		try {
+			InputStream stream = new FileInputStream(file);
+			try {
+				Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(stream);
+				Element root = document.getDocumentElement();
+				if (!gerritUrl.equals(root.getAttribute(ATTR_URL))
+						|| !project.equals(root.getAttribute(ATTR_PROJECT))) {
+					return;
+				}
+				for (Element el: getChildElements(root.getChildNodes())) {
+					if (el.getNodeName().equals(ELEM_CHANGE)) {
+						Change change = new Change(el);
+						changes.put(change.number, change);
+					}
+				}
+				lastSync = Long.parseLong(root.getAttribute(ATTR_LAST_SYNC));
+				if (root.hasAttribute(ATTR_PAGE_LIMIT)) {
+					pageLimit = Integer.parseInt(root.getAttribute(ATTR_PAGE_LIMIT));
+				}
+			} finally {
+				stream.close();
+			}
+		} catch (Exception e) {
+			changes.clear();
+			lastSync = 0;
+			pageLimit = QUERY_LIMIT;
+			GerritToolsPlugin.getDefault().log("Cannot read index of Gerrit changes, index will be rebuilt.", e);
+		}
+	}
+
+	private synchronized void save() {
+		try {
+			Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+			Element root = document.createElement(ELEM_CHANGES);
+			root.setAttribute(ATTR_URL, gerritUrl);
+			root.setAttribute(ATTR_PROJECT, project);
+			root.setAttribute(ATTR_LAST_SYNC, Long.toString(lastSync));
+			root.setAttribute(ATTR_PAGE_LIMIT, Integer.toString(pageLimit));
+			document.appendChild(root);
+			for (Change change: changes.values()) {
+				Element el = document.createElement(ELEM_CHANGE);
+				change.serialize(el);
+				root.appendChild(el);
+			}
+
+			file.getParentFile().mkdirs();
+			OutputStream stream = new FileOutputStream(file, false);
+			try {
+				Transformer transformer = TransformerFactory.newInstance().newTransformer();
+				transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8"); //$NON-NLS-1$
+				transformer.transform(new DOMSource(document), new StreamResult(stream));
+			} finally {
+				stream.close();
+			}
+			dirty = false;
+		} catch (Exception e) {
+			GerritToolsPlugin.getDefault().log("Cannot store index of Gerrit changes.", e);
+		}
+	}
+
+	/**
+	 * Immutable summary of an open Gerrit change.
+	 */
+	public static class Change {
+
+		private final int number;
+		private final String subject;
+		private final String branch;
+		private final String owner;
+		private final long updated;
+		private final int patchSets;
+
+		private Change(GerritQueryResult res, Change previous) {
+			number = res.getNumber();
+			subject = res.getSubject() != null ? res.getSubject() : ""; //$NON-NLS-1$
+			branch = res.getBranch() != null ? res.getBranch() : ""; //$NON-NLS-1$
+			owner = res.getOwner() != null ? res.getOwner().getName() : null;
+			Date date = res.getUpdated();
+			updated = date != null ? date.getTime() : 0;
+			//patchset count is valid as long as the change is not updated
+			patchSets = previous != null && previous.updated == updated ? previous.patchSets : 0;
+		}
+
+		private Change(Change change, int patchSets) {
+			this.number = change.number;
+			this.subject = change.subject;
+			this.branch = change.branch;
+			this.owner = change.owner;
+			this.updated = change.updated;
+			this.patchSets = patchSets;
+		}
+
+		private Change(Element el) {
+			number = Integer.parseInt(el.getAttribute(ATTR_NUMBER));
+			subject = el.getAttribute(ATTR_SUBJECT);
+			branch = el.getAttribute(ATTR_BRANCH);
+			owner = el.hasAttribute(ATTR_OWNER) ? el.getAttribute(ATTR_OWNER) : null;
+			updated = Long.parseLong(el.getAttribute(ATTR_UPDATED));
+			patchSets = Integer.parseInt(el.getAttribute(ATTR_PATCHSETS));
+		}
+
+		private void serialize(Element el) {
+			el.setAttribute(ATTR_NUMBER, Integer.toString(number));
+			el.setAttribute(ATTR_SUBJECT, subject);
+			el.setAttribute(ATTR_BRANCH, branch);
+			if (owner != null) {
+				el.setAttribute(ATTR_OWNER, owner);
+			}
+			el.setAttribute(ATTR_UPDATED, Long.toString(updated));
+			el.setAttribute(ATTR_PATCHSETS, Integer.toString(patchSets));
+		}
+
+		public int getNumber() {
+			return number;
+		}
+
+		public String getSubject() {
+			return subject;
+		}
+
+		public String getBranch() {
+			return branch;
+		}
+
+		public String getOwner() {
+			return owner;
+		}
+
+		public long getUpdated() {
+			return updated;
+		}
+
+		/**
+		 * @return number of patchsets or 0 if not known
+		 */
+		public int getPatchSetCount() {
+			return patchSets;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Change)) {
+				return false;
+			}
+			Change other = (Change) obj;
+			return number == other.number && updated == other.updated && patchSets == other.patchSets
+					&& equal(subject, other.subject) && equal(branch, other.branch) && equal(owner, other.owner);
+		}
+
+		@Override
+		public int hashCode() {
+			return number;
+		}
+
+		private static boolean equal(Object o1, Object o2) {
+			return o1 == null ? o2 == null : o1.equals(o2);
+		}
+
+	}
+
+}
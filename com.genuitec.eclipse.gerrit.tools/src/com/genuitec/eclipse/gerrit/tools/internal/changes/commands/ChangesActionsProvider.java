@@ -10,15 +10,10 @@
  */
 package com.genuitec.eclipse.gerrit.tools.internal.changes.commands;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
 
-import org.eclipse.core.runtime.IPath;
-import org.eclipse.core.runtime.Path;
 import org.eclipse.egit.ui.internal.DecorationOverlayDescriptor;
 import org.eclipse.egit.ui.internal.UIIcons;
 import org.eclipse.jface.action.ContributionItem;
@@ -39,6 +34,9 @@ import org.eclipse.ui.menus.IWorkbenchContribution;
 import org.eclipse.ui.services.IServiceLocator;
 
 import com.genuitec.eclipse.gerrit.tools.GerritToolsPlugin;
+import com.genuitec.eclipse.gerrit.tools.internal.changes.ChangeBranchClassifier;
+import com.genuitec.eclipse.gerrit.tools.internal.changes.ChangeBranchTree;
+import com.genuitec.eclipse.gerrit.tools.internal.utils.commands.LoadingContributionItem;
 import com.genuitec.eclipse.gerrit.tools.utils.RepositoryUtils;
 
 @SuppressWarnings("restriction")
@@ -59,25 +57,17 @@ public class ChangesActionsProvider extends CompoundContributionItem implements
 			return new IContributionItem[0];
 		}
 		
-		Set<String> stables = new TreeSet<String>();
-		try {
-			for (String ref: repository.getRefDatabase().getRefs("refs/heads/changes/").keySet()) {
-				IPath refPath = new Path(ref);
-				if (refPath.segmentCount() > 1) {
-					if (refPath.segment(0).equals("features") && refPath.segmentCount() > 3) {
-						stables.add(refPath.uptoSegment(3).toString());
-					} else {
-						stables.add(refPath.segment(0));
-					}
-				}
-			}
-		} catch (IOException e) {
-			//ignore
+		//never read refs on UI thread, the tree is built in background
+		ChangeBranchTree tree = ChangeBranchTree.getIfAvailable(repository);
+		if (tree == null) {
+			return new IContributionItem[] { new LoadingContributionItem("Loading changes...") };
 		}
+		//get ready for cleanup of change branches
+		ChangeBranchClassifier.prefetch(repository);
 		
 		List<IContributionItem> result = new ArrayList<IContributionItem>();
-		for (String stable: stables) {
-			result.add(new ChangesOnStableActionProvider(repository, stable));
+		for (String stable: tree.getStableBranches()) {
+			result.add(new ChangesOnStableActionProvider(tree, stable));
 		}
 		
 		return result.toArray(new IContributionItem[result.size()]);
@@ -85,11 +75,11 @@ public class ChangesActionsProvider extends CompoundContributionItem implements
 
 	private class ChangesOnStableActionProvider extends ContributionItem {
 		
-		private Repository repository;
+		private ChangeBranchTree tree;
 		private String stable;
 
-		public ChangesOnStableActionProvider(Repository repo, String stable) {
-			this.repository = repo;
+		public ChangesOnStableActionProvider(ChangeBranchTree tree, String stable) {
+			this.tree = tree;
 			this.stable = stable;
 		}
 		
@@ -106,26 +96,14 @@ public class ChangesActionsProvider extends CompoundContributionItem implements
 		}
 		
 		private IContributionItem[] createContributions() {
-			List<String> changes = new ArrayList<String>();
-			try {
-				changes.addAll(repository.getRefDatabase().getRefs("refs/heads/changes/" + stable + "/").keySet()); //$NON-NLS-1$ //$NON-NLS-2$
-			} catch (IOException e) {
-				//ignore
-			}
-			String curBranch = null;
-			try {
-				curBranch = repository.getFullBranch();
-			} catch (IOException e) {
-				//ignore
-			}
-			Collections.sort(changes);
+			String curBranch = tree.getCurrentBranch();
 			List<IContributionItem> result = new ArrayList<IContributionItem>();
-			for (String change: changes) {
+			for (String change: tree.getChanges(stable)) {
 				CommandContributionItemParameter parameter = new CommandContributionItemParameter(
 						serviceLocator, 
 						"com.genuitec.eclipse.gerrit.tools.switchToChangeBranch." + change, 
 						"com.genuitec.eclipse.gerrit.tools.switchToChangeBranch", SWT.PUSH);
-				String branchRef = "refs/heads/changes/" + stable + "/" + change;
+				String branchRef = ChangeBranchTree.CHANGES_PREFIX + stable + "/" + change;
 				parameter.parameters = Collections.singletonMap("branch.ref", branchRef);
 				parameter.label = change.replace('(', '[').replace(')', ']').replace('_', ' ');
 				parameter.icon = GerritToolsPlugin.getDefault().getImageDescriptor(GerritToolsPlugin.IMG_GERRIT_CHANGE);
@@ -11,8 +11,10 @@
 package com.genuitec.eclipse.gerrit.tools.internal.changes.commands;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.commands.ExecutionEvent;
 import org.eclipse.core.commands.ExecutionException;
@@ -21,6 +23,10 @@ import org.eclipse.core.expressions.Expression;
 import org.eclipse.core.expressions.ExpressionInfo;
 import org.eclipse.core.expressions.IEvaluationContext;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.jface.dialogs.ProgressMonitorDialog;
+import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
@@ -30,6 +36,9 @@ import org.eclipse.ui.handlers.HandlerUtil;
 import org.eclipse.ui.internal.AbstractEvaluationHandler;
 import org.eclipse.ui.internal.InternalHandlerUtil;
 
+import com.genuitec.eclipse.gerrit.tools.internal.changes.ChangeBranchClassifier;
+import com.genuitec.eclipse.gerrit.tools.internal.changes.ChangeBranchClassifier.State;
+import com.genuitec.eclipse.gerrit.tools.internal.changes.ChangeBranchTree;
 import com.genuitec.eclipse.gerrit.tools.internal.changes.dialogs.CleanupChangesDialog;
 import com.genuitec.eclipse.gerrit.tools.internal.fbranches.BranchingUtils;
 import com.genuitec.eclipse.gerrit.tools.utils.RepositoryUtils;
@@ -45,13 +54,36 @@ public class CleanupChangesCommand extends AbstractEvaluationHandler {
 	
 	public Object execute(ExecutionEvent event) throws ExecutionException {
 		Shell shell = HandlerUtil.getActiveShell(event);
-		Repository repo = RepositoryUtils.getRepository(HandlerUtil.getCurrentSelection(event));
+		final Repository repo = RepositoryUtils.getRepository(HandlerUtil.getCurrentSelection(event));
 		if (repo == null) {
 			return null;
 		}
 		
+		//classify branches before showing the dialog
+		final ChangeBranchTree[] tree = new ChangeBranchTree[1];
+		final List<Map<String, State>> states = new ArrayList<Map<String, State>>(1);
+		try {
+			new ProgressMonitorDialog(shell).run(true, true, new IRunnableWithProgress() {
+				public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
+					try {
+						tree[0] = ChangeBranchTree.get(repo);
+						states.add(ChangeBranchClassifier.get(repo, monitor));
+					} catch (OperationCanceledException e) {
+						throw new InterruptedException();
+					} catch (IOException e) {
+						throw new InvocationTargetException(e);
+					}
+				}
+			});
+		} catch (InvocationTargetException e) {
+			RepositoryUtils.handleException(e.getCause());
+			return null;
+		} catch (InterruptedException e) {
+			return null;
+		}
+		
 		CleanupChangesDialog dialog = new CleanupChangesDialog(shell);
-		List<String> changesToRemove = dialog.select(repo);
+		List<String> changesToRemove = dialog.select(tree[0], states.get(0));
 		
 		if (changesToRemove == null || changesToRemove.isEmpty()) {
 			return null;
@@ -0,0 +1,130 @@
+/**
+ *  Copyright (c) 2015 Genuitec LLC.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Piotr Tomiak <piotr@genuitec.com> - initial API and implementation
+ */
+package com.genuitec.eclipse.gerrit.tools.internal.changes.commands;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.dialogs.ProgressMonitorDialog;
+import org.eclipse.jface.operation.IRunnableWithProgress;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.mylyn.internal.gerrit.core.client.GerritClient;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.handlers.HandlerUtil;
+
+import com.genuitec.eclipse.gerrit.tools.internal.changes.ChangeBranch;
+import com.genuitec.eclipse.gerrit.tools.internal.changes.ChangeBranchTree;
+import com.genuitec.eclipse.gerrit.tools.internal.changes.GerritChangeIndex;
+import com.genuitec.eclipse.gerrit.tools.internal.fbranches.BranchingUtils;
+import com.genuitec.eclipse.gerrit.tools.utils.GerritUtils;
+import com.genuitec.eclipse.gerrit.tools.utils.RepositoryUtils;
+
+/**
+ * Removes change branches of changes, which have been merged or abandoned in Gerrit.
+ * Change numbers are taken from names of branches fetched from Gerrit and their
+ * statuses are resolved with a few batched queries.
+ */
+@SuppressWarnings("restriction")
+public class CleanupClosedChangesCommand extends CleanupChangesCommand {
+
+	private static final int MAX_LISTED_BRANCHES = 20;
+
+	@Override
+	public Object execute(ExecutionEvent event) throws ExecutionException {
+		Shell shell = HandlerUtil.getActiveShell(event);
+		final Repository repo = RepositoryUtils.getRepository(HandlerUtil.getCurrentSelection(event));
+		if (repo == null) {
+			return null;
+		}
+
+		final List<Ref> toDelete = new ArrayList<Ref>();
+		try {
+			new ProgressMonitorDialog(shell).run(true, true, new IRunnableWithProgress() {
+				public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
+					try {
+						toDelete.addAll(findClosedChangeBranches(repo, monitor));
+					} catch (OperationCanceledException e) {
+						throw new InterruptedException();
+					} catch (Exception e) {
+						throw new InvocationTargetException(e);
+					}
+				}
+			});
+		} catch (InvocationTargetException e) {
+			RepositoryUtils.handleException(e.getCause());
+			return null;
+		} catch (InterruptedException e) {
+			return null;
+		}
+
+		if (toDelete.isEmpty()) {
+			MessageDialog.openInformation(shell, "Changes cleanup",
+					"There are no branches of merged or abandoned changes.");
+			return null;
+		}
+		StringBuilder message = new StringBuilder();
+		message.append(toDelete.size()).append(" branches of merged or abandoned changes will be removed:\n"); //$NON-NLS-1$
+		for (int i = 0; i < toDelete.size() && i < MAX_LISTED_BRANCHES; i++) {
+			message.append("\n").append(toDelete.get(i).getName().substring( //$NON-NLS-1$
+					ChangeBranchTree.CHANGES_PREFIX.length()));
+		}
+		if (toDelete.size() > MAX_LISTED_BRANCHES) {
+			message.append("\n..."); //$NON-NLS-1$
+		}
+		if (MessageDialog.openConfirm(shell, "Changes cleanup", message.toString())) {
+			BranchingUtils.deleteBranches(shell, repo, toDelete);
+		}
+		return null;
+	}
+
+	private static List<Ref> findClosedChangeBranches(Repository repo, IProgressMonitor monitor) throws Exception {
+		SubMonitor progress = SubMonitor.convert(monitor, "Looking for branches of closed changes", 10);
+		String curBranch = repo.getFullBranch();
+		Map<Integer, List<Ref>> branchesByChange = new LinkedHashMap<Integer, List<Ref>>();
+		for (Ref ref: repo.getRefDatabase().getRefs(ChangeBranchTree.CHANGES_PREFIX).values()) {
+			ChangeBranch branch = ChangeBranch.parse(ref.getName());
+			if (branch == null || ref.getName().equals(curBranch)) {
+				continue;
+			}
+			List<Ref> refs = branchesByChange.get(branch.getChangeNumber());
+			if (refs == null) {
+				refs = new ArrayList<Ref>();
+				branchesByChange.put(branch.getChangeNumber(), refs);
+			}
+			refs.add(ref);
+		}
+		progress.worked(1);
+		List<Ref> result = new ArrayList<Ref>();
+		if (branchesByChange.isEmpty()) {
+			return result;
+		}
+		GerritClient client = GerritUtils.getGerritClient(repo, progress.newChild(1));
+		Map<Integer, String> statuses = GerritUtils.getChangeStatuses(
+				client, branchesByChange.keySet(), progress.newChild(8));
+		for (Map.Entry<Integer, List<Ref>> entry: branchesByChange.entrySet()) {
+			if (GerritChangeIndex.isClosed(statuses.get(entry.getKey()))) {
+				result.addAll(entry.getValue());
+			}
+		}
+		return result;
+	}
+
+}
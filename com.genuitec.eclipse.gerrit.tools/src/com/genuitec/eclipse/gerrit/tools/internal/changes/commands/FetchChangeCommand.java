@@ -12,7 +12,7 @@ package com.genuitec.eclipse.gerrit.tools.internal.changes.commands;
 
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -25,6 +25,7 @@ import org.eclipse.jface.dialogs.ProgressMonitorDialog;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.FetchResult;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.TagOpt;
@@ -35,10 +36,12 @@ import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.handlers.HandlerUtil;
 
+import com.genuitec.eclipse.gerrit.tools.internal.changes.ChangeBranch;
 import com.genuitec.eclipse.gerrit.tools.internal.changes.dialogs.FetchChangeBranchDialog;
 import com.genuitec.eclipse.gerrit.tools.internal.utils.commands.SafeCommandHandler;
 import com.genuitec.eclipse.gerrit.tools.utils.MessageLinkDialog;
 import com.genuitec.eclipse.gerrit.tools.utils.RepositoryUtils;
+import com.genuitec.eclipse.gerrit.tools.utils.TransportPolicy;
 
 @SuppressWarnings("restriction")
 public class FetchChangeCommand extends SafeCommandHandler {
@@ -68,25 +71,69 @@ public class FetchChangeCommand extends SafeCommandHandler {
 	            //ignore
 	        }
         } catch (NoClassDefFoundError err) {
-        	MessageLinkDialog.openWarning(shell, 
-        			"Mylyn for Gerrit is not installed", 
-        			"To be able to fetch a change from Gerrit, please install Mylyn Gerrit connector. Detailed instructions can be found <a>here</a>.",
-        			new MessageLinkDialog.IMessageLinkDialogListener() {
-						@Override
-						public void linkSelected(SelectionEvent e) {
-							try {
-								PlatformUI.getWorkbench().getBrowserSupport().getExternalBrowser().openURL(
-										new URL("https://github.com/Genuitec/gerrit-tools/wiki/Fetch-from-Gerrit-setup"));
-							} catch (Exception ex) {
-								RepositoryUtils.handleException(ex);
-							}
-						}
-					});
+        	showMylynGerritMissing(shell);
         }
         
         return null;
 	}
 
+	/**
+	 * Informs the user that Mylyn Gerrit connector needs to be installed.
+	 */
+	static void showMylynGerritMissing(Shell shell) {
+		MessageLinkDialog.openWarning(shell, 
+				"Mylyn for Gerrit is not installed", 
+				"To be able to fetch a change from Gerrit, please install Mylyn Gerrit connector. Detailed instructions can be found <a>here</a>.",
+				new MessageLinkDialog.IMessageLinkDialogListener() {
+					@Override
+					public void linkSelected(SelectionEvent e) {
+						try {
+							PlatformUI.getWorkbench().getBrowserSupport().getExternalBrowser().openURL(
+									new URL("https://github.com/Genuitec/gerrit-tools/wiki/Fetch-from-Gerrit-setup"));
+						} catch (Exception ex) {
+							RepositoryUtils.handleException(ex);
+						}
+					}
+				});
+	}
+
+	/**
+	 * @return spec fetching a patchset of a change into the local branch
+	 */
+	static RefSpec createRefSpec(int changeId, int patchSetId, String branchRef) {
+		return new RefSpec(
+				String.format("+refs/changes/%02d/%d/%d", changeId % 100, changeId, patchSetId) //$NON-NLS-1$
+				+ ":" + branchRef); //$NON-NLS-1$
+	}
+
+	/**
+	 * Fetches patchsets from the origin of the repository. All specs are fetched
+	 * over a single connection.
+	 */
+	static void fetchChanges(final Repository repo, final List<RefSpec> refSpecs, 
+			final IProgressMonitor monitor) throws Exception {
+		List<URIish> urls = new RemoteConfig(repo.getConfig(), "origin").getURIs(); //$NON-NLS-1$
+		if (urls.isEmpty()) {
+			throw new InvocationTargetException(new RuntimeException("Repository is not configured for fetch"));
+		}
+		final URIish uri = urls.get(0);
+		TransportPolicy.execute("Fetch of changes", TransportPolicy.getTimeout(uri), monitor, //$NON-NLS-1$
+				new TransportPolicy.ITransportOperation<FetchResult>() {
+					public FetchResult run(int timeout) throws Exception {
+						return new Git(repo).fetch().
+								setRemote(uri.toPrivateString()).
+								setRefSpecs(refSpecs).
+								setRemoveDeletedRefs(true).
+								setTagOpt(TagOpt.NO_TAGS).
+								setDryRun(false).
+								setTimeout(timeout).
+								setCredentialsProvider(new EGitCredentialsProvider()).
+								setProgressMonitor( new EclipseGitProgressTransformer(monitor)).
+								call();
+					}
+				});
+	}
+
     private static class CreateChangeBranchOperation implements IRunnableWithProgress {
 
     	private Repository repo;
@@ -102,34 +149,14 @@ public class FetchChangeCommand extends SafeCommandHandler {
 
 		public void run(IProgressMonitor monitor)
 				throws InvocationTargetException, InterruptedException {
-			final String changeBranch = "refs/heads/changes/" + settings.get(FetchChangeBranchDialog.PROP_BRANCH)
-					 + "/" + settings.get(FetchChangeBranchDialog.PROP_CHANGE_ID) 
-					 		+ "-" + convertToBranchName((String)settings.get(FetchChangeBranchDialog.PROP_CHANGE_TITLE)) 
-					 + "/" + settings.get(FetchChangeBranchDialog.PROP_PATCHSET_ID);
-			
 			int changeId = Integer.parseInt((String)settings.get(FetchChangeBranchDialog.PROP_CHANGE_ID));
 			int patchSetId = Integer.parseInt((String)settings.get(FetchChangeBranchDialog.PROP_PATCHSET_ID));
+			final String changeBranch = ChangeBranch.getRefName(
+					(String)settings.get(FetchChangeBranchDialog.PROP_BRANCH), changeId, 
+					(String)settings.get(FetchChangeBranchDialog.PROP_CHANGE_TITLE), patchSetId);
 			try {
-				List<URIish> urls = new RemoteConfig(repo.getConfig(), "origin").getURIs(); //$NON-NLS-1$
-				if (urls.isEmpty()) {
-					throw new InvocationTargetException(new RuntimeException("Repository is not configured for fetch"));
-				}
-				List<RefSpec> refSpecs = new ArrayList<RefSpec>();
-				refSpecs.add(new RefSpec(
-						String.format("+refs/changes/%02d/%d/%d", changeId % 100, changeId, patchSetId)
-						+ ":" + changeBranch));
-				
-				URIish uri = urls.get(0);
-				new Git(repo).fetch().
-						setRemote(uri.toPrivateString()).
-						setRefSpecs(refSpecs).
-						setRemoveDeletedRefs(true).
-						setTagOpt(TagOpt.NO_TAGS).
-						setDryRun(false).
-						setTimeout(3000).
-						setCredentialsProvider(new EGitCredentialsProvider()).
-						setProgressMonitor( new EclipseGitProgressTransformer(monitor)).
-						call();
+				fetchChanges(repo, Collections.singletonList(createRefSpec(changeId, patchSetId, changeBranch)), 
+						monitor);
 				
 				if ((Boolean)settings.get(FetchChangeBranchDialog.PROP_CHECKOUT)) {
 					Display.getDefault().asyncExec( new Runnable() {
@@ -143,26 +170,6 @@ public class FetchChangeCommand extends SafeCommandHandler {
 	        	RepositoryUtils.handleException(e);
 			}
 		}
-
-		private String convertToBranchName(String name) {
-			StringBuilder sb = new StringBuilder(name.length());
-			for(int i = 0; i < name.length() && i < 30; i++) {
-				char ch = name.charAt(i);
-				if (ch < 40 
-						|| ch == '~' || ch == '^' || ch == ':' || ch == 177 
-						|| ch == '?' || ch == '*' || ch == '/' || ch == '\\'
-						|| ch == '.' || ch == '@' || ch == ' ') {
-					sb.append('_');
-				} else if (ch == '[') {
-					sb.append('(');
-				} else if (ch == ']') {
-					sb.append(')');
-				} else {
-					sb.append(ch);
-				}
-			}
-			return sb.toString();
-		}
 		
     }
     
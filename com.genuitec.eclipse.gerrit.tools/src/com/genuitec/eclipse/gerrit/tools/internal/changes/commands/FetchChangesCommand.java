@@ -0,0 +1,139 @@
+/**
+ *  Copyright (c) 2015 Genuitec LLC.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Piotr Tomiak <piotr@genuitec.com> - initial API and implementation
+ */
+package com.genuitec.eclipse.gerrit.tools.internal.changes.commands;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jface.dialogs.ProgressMonitorDialog;
+import org.eclipse.jface.operation.IRunnableWithProgress;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.handlers.HandlerUtil;
+
+import com.genuitec.eclipse.gerrit.tools.internal.changes.ChangeBranch;
+import com.genuitec.eclipse.gerrit.tools.internal.changes.ChangeDetailsLoader;
+import com.genuitec.eclipse.gerrit.tools.internal.changes.GerritChangeIndex;
+import com.genuitec.eclipse.gerrit.tools.internal.changes.dialogs.FetchChangesDialog;
+import com.genuitec.eclipse.gerrit.tools.internal.utils.commands.SafeCommandHandler;
+import com.genuitec.eclipse.gerrit.tools.utils.RepositoryUtils;
+
+/**
+ * Fetches the latest patchsets of several changes into change branches. All patchsets
+ * are fetched with a single fetch, so the connection is opened and the pack negotiated
+ * only once.
+ */
+public class FetchChangesCommand extends SafeCommandHandler {
+
+	@Override
+	protected Object internalExecute(ExecutionEvent event) throws Exception {
+		Shell shell = HandlerUtil.getActiveShell(event);
+
+		Repository repository = RepositoryUtils.getRepository(HandlerUtil.getCurrentSelection(event));
+		if (repository == null) {
+			return null;
+		}
+
+		try {
+			FetchChangesDialog dialog = new FetchChangesDialog(shell, repository);
+			List<GerritChangeIndex.Change> changes = dialog.select();
+			if (changes.isEmpty()) {
+				return null;
+			}
+			ChangeDetailsLoader loader = new ChangeDetailsLoader(dialog.getClient(), dialog.getIndex());
+			try {
+				new ProgressMonitorDialog(shell).run(true, true,
+						new FetchChangesOperation(repository, changes, loader));
+			} catch (InterruptedException e) {
+				//ignore
+			} finally {
+				loader.dispose();
+			}
+		} catch (NoClassDefFoundError err) {
+			FetchChangeCommand.showMylynGerritMissing(shell);
+		}
+		return null;
+	}
+
+	private static class FetchChangesOperation implements IRunnableWithProgress {
+
+		private Repository repo;
+		private List<GerritChangeIndex.Change> changes;
+		private ChangeDetailsLoader loader;
+
+		public FetchChangesOperation(Repository repository, List<GerritChangeIndex.Change> changes,
+				ChangeDetailsLoader loader) {
+			this.repo = repository;
+			this.changes = changes;
+			this.loader = loader;
+		}
+
+		public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
+			SubMonitor progress = SubMonitor.convert(monitor, "Fetching changes", changes.size() + 10);
+			try {
+				//request all unknown patchsets at once, the loader limits concurrent requests
+				Map<GerritChangeIndex.Change, Future<Integer>> patchSets =
+						new LinkedHashMap<GerritChangeIndex.Change, Future<Integer>>();
+				for (GerritChangeIndex.Change change: changes) {
+					if (change.getPatchSetCount() <= 0) {
+						patchSets.put(change, loader.request(change.getNumber()));
+					}
+				}
+				progress.subTask("Resolving patchsets");
+				List<RefSpec> refSpecs = new ArrayList<RefSpec>();
+				for (GerritChangeIndex.Change change: changes) {
+					Future<Integer> future = patchSets.get(change);
+					int patchSet = future != null ? waitFor(future, progress) : change.getPatchSetCount();
+					refSpecs.add(FetchChangeCommand.createRefSpec(change.getNumber(), patchSet,
+							ChangeBranch.getRefName(change.getBranch(), change.getNumber(),
+									change.getSubject(), patchSet)));
+					progress.worked(1);
+				}
+				FetchChangeCommand.fetchChanges(repo, refSpecs, progress.newChild(10));
+			} catch (OperationCanceledException e) {
+				throw new InterruptedException();
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Exception e) {
+				RepositoryUtils.handleException(e);
+			}
+		}
+
+		private static int waitFor(Future<Integer> future, IProgressMonitor monitor) throws Exception {
+			while (true) {
+				if (monitor.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+				try {
+					return future.get(200, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					//check for cancellation
+				} catch (ExecutionException e) {
+					throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+			}
+		}
+
+	}
+
+}
@@ -10,27 +10,23 @@
  */
 package com.genuitec.eclipse.gerrit.tools.internal.changes.dialogs;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
-import org.eclipse.core.resources.ResourcesPlugin;
-import org.eclipse.core.runtime.IPath;
-import org.eclipse.core.runtime.Path;
 import org.eclipse.jface.dialogs.Dialog;
 import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.LabelProvider;
 import org.eclipse.jface.viewers.Viewer;
-import org.eclipse.jgit.lib.Repository;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.dialogs.CheckedTreeSelectionDialog;
 
 import com.genuitec.eclipse.gerrit.tools.GerritToolsPlugin;
+import com.genuitec.eclipse.gerrit.tools.internal.changes.ChangeBranchClassifier.State;
+import com.genuitec.eclipse.gerrit.tools.internal.changes.ChangeBranchTree;
 
 public class CleanupChangesDialog {
 
@@ -40,7 +36,29 @@ public class CleanupChangesDialog {
 		this.shell = shell;
 	}
 	
-	public List<String> select(Repository repo) {
+	/**
+	 * @param tree change branches of the repository
+	 * @param states classification of change branches, merged branches are selected initially
+	 * @return names of selected branches relative to <code>refs/heads/changes/</code>
+	 */
+	public List<String> select(ChangeBranchTree tree, Map<String, State> states) {
+		List<StableBranch> branches = new ArrayList<StableBranch>();
+		List<Change> merged = new ArrayList<Change>();
+		for (String stable: tree.getStableBranches()) {
+			StableBranch sb = new StableBranch(stable);
+			for (String name: tree.getChanges(stable)) {
+				String fullName = stable + "/" + name; //$NON-NLS-1$
+				if (!(ChangeBranchTree.CHANGES_PREFIX + fullName).equals(tree.getCurrentBranch())) {
+					Change change = sb.addChange(name, states.get(fullName));
+					if (change.state == State.MERGED) {
+						merged.add(change);
+					}
+				}
+			}
+			if (!sb.children.isEmpty()) {
+				branches.add(sb);
+			}
+		}
 		CheckedTreeSelectionDialog dialog = new CheckedTreeSelectionDialog(
 				shell, 
 				new BranchesLabelProvider(),
@@ -52,10 +70,10 @@ public class CleanupChangesDialog {
 			}
 		};
 		dialog.setContainerMode(true);
-		dialog.setMessage("Choose change branches to remove from local repository:");
+		dialog.setMessage("Choose change branches to remove from local repository, merged branches are selected:");
 		dialog.setTitle("Changes cleanup");
-		dialog.setInput(repo);
-		dialog.setInitialSelection(ResourcesPlugin.getWorkspace().getRoot().getProjects());
+		dialog.setInput(branches);
+		dialog.setInitialElementSelections(merged);
 		if (dialog.open() == Dialog.OK && dialog.getResult() != null) {
 			ArrayList<String> changes = new ArrayList<String>();
 			for (Object o: dialog.getResult()) {
@@ -78,8 +96,10 @@ public class CleanupChangesDialog {
 			this.children = new ArrayList<Change>();
 		}
 		
-		public void addChange(String name) {
-			children.add(new Change(this, name));
+		public Change addChange(String name, State state) {
+			Change change = new Change(this, name, state);
+			children.add(change);
+			return change;
 		}
 		
 		public Object[] getChildren() {
@@ -92,10 +112,12 @@ public class CleanupChangesDialog {
 		
 		private String name;
 		private StableBranch parent;
+		private State state;
 		
-		public Change(StableBranch parent, String name) {
+		public Change(StableBranch parent, String name, State state) {
 			this.name = name;
 			this.parent = parent;
+			this.state = state;
 		}
 		
 		public String getFullName() {
@@ -123,7 +145,13 @@ public class CleanupChangesDialog {
 			if (element instanceof StableBranch) {
 				return ((StableBranch) element).name;
 			} else if (element instanceof Change) {
-				return ((Change) element).name;
+				Change change = (Change) element;
+				if (change.state == State.MERGED) {
+					return change.name + " [merged]";
+				} else if (change.state == State.OBSOLETE) {
+					return change.name + " [obsolete patchset]";
+				}
+				return change.name;
 			}
 			return null;
 		}
@@ -132,9 +160,6 @@ public class CleanupChangesDialog {
 	
 	private static class BranchesContentProvider implements ITreeContentProvider {
 
-		private Repository repo;
-		private Object[] children;
-		
 		@Override
 		public void dispose() {
 		}
@@ -146,39 +171,7 @@ public class CleanupChangesDialog {
 
 		@Override
 		public Object[] getElements(Object inputElement) {
-			Repository repo = (Repository) inputElement;
-			Map<String, StableBranch> branches = new TreeMap<String, StableBranch>();
-			try {
-
-				String curBranch = repo.getFullBranch();
-				if (curBranch.startsWith("refs/heads/changes/")) {
-					curBranch = curBranch.substring("refs/heads/changes/".length());
-				}
-				for (String branch: repo.getRefDatabase().getRefs("refs/heads/changes/").keySet()) {
-					if (!curBranch.equals(branch)) {
-						IPath branchPath = new Path(branch);
-						if (branchPath.segmentCount() > 1) {
-							String stableName = branchPath.segment(0);
-							String changeName;
-							if (stableName.equals("features") && branchPath.segmentCount() > 3) {
-								stableName = branchPath.uptoSegment(3).toString();
-								changeName = branchPath.removeFirstSegments(3).toString();
-							} else {
-								changeName = branchPath.removeFirstSegments(1).toString();
-							}
-							StableBranch sb = branches.get(stableName);
-							if (sb == null) {
-								sb = new StableBranch(stableName);
-								branches.put(stableName, sb);
-							}
-							sb.addChange(changeName);
-						}
-					}
-				}
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
-			return branches.values().toArray();
+			return ((List<?>) inputElement).toArray();
 		}
 
 		@Override
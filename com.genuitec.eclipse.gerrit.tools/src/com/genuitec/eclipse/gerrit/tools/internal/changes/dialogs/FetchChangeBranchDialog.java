@@ -10,11 +10,15 @@
  */
 package com.genuitec.eclipse.gerrit.tools.internal.changes.dialogs;
 
-import java.lang.reflect.Method;
 import java.text.MessageFormat;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -29,9 +33,6 @@ import org.eclipse.jgit.lib.Repository;
 import org.eclipse.mylyn.internal.gerrit.core.client.GerritClient;
 import org.eclipse.mylyn.internal.gerrit.core.client.GerritException;
 import org.eclipse.mylyn.internal.gerrit.core.client.GerritLoginException;
-import org.eclipse.mylyn.internal.gerrit.core.client.data.GerritQueryResult;
-import org.eclipse.mylyn.internal.gerrit.core.client.rest.ChangeInfo;
-import org.eclipse.mylyn.internal.gerrit.core.client.rest.RevisionInfo;
 import org.eclipse.mylyn.tasks.ui.TasksUiUtil;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.ModifyEvent;
@@ -45,6 +46,8 @@ import org.eclipse.swt.widgets.Text;
 
 import com.genuitec.eclipse.gerrit.tools.GerritToolsPlugin;
 import com.genuitec.eclipse.gerrit.tools.dialogs.SettingsDialog;
+import com.genuitec.eclipse.gerrit.tools.internal.changes.ChangeDetailsLoader;
+import com.genuitec.eclipse.gerrit.tools.internal.changes.GerritChangeIndex;
 import com.genuitec.eclipse.gerrit.tools.utils.GerritUtils;
 
 @SuppressWarnings("restriction")
@@ -61,35 +64,43 @@ public class FetchChangeBranchDialog extends SettingsDialog {
 	protected final Repository repository;
 	private Combo change;
 	private Text branch;
-	private String projectCondition;
 	private Combo patchset;
 	private GerritClient client;
-	private List<GerritQueryResult> changes;
-	private Map<Integer, ChangeInfo> details;
+	private GerritChangeIndex index;
+	private List<GerritChangeIndex.Change> changes;
+	private ChangeDetailsLoader loader;
+	private boolean updatingChanges;
 	private PatchSetListInit patchSetInitJob = new PatchSetListInit();
+	private IndexRefreshJob refreshJob = new IndexRefreshJob();
 	
-	@SuppressWarnings("unchecked")
 	public FetchChangeBranchDialog(Shell shell, Repository repository) {
 		super(shell, "Fetch change from Gerrit");
 		this.repository = repository;
-		this.projectCondition = " project:" + GerritUtils.getGerritProjectName(repository); //$NON-NLS-1$
-		this.details = new HashMap<Integer, ChangeInfo>();
 		client = GerritUtils.getGerritClient(repository, SubMonitor.convert(null));
+		index = GerritChangeIndex.getIndex(GerritUtils.getGerritURL(repository), 
+				GerritUtils.getGerritProjectName(repository));
+		//block only if there is nothing to show yet, otherwise refresh in background
+		if (!index.isSynchronized()) {
+			synchronizeIndex(shell, client, index);
+		} else {
+			refreshJob.schedule();
+		}
+		changes = index.getChanges();
+		//details are requested only for changes chosen by the user
+		loader = new ChangeDetailsLoader(client, index);
+	}
+	
+	/**
+	 * Synchronizes the index with Gerrit, asking the user to correct Gerrit setup if login fails.
+	 * 
+	 * @throws OperationCanceledException if the user has cancelled correction of the setup
+	 */
+	static void synchronizeIndex(Shell shell, GerritClient client, GerritChangeIndex index) {
 		boolean retry = true;
 		while (retry) {
 			retry = false;
 			try {
-				try {
-					changes = client.getRestClient().executeQuery(SubMonitor.convert(null), "status:open" + projectCondition); //$NON-NLS-1$
-				} catch (NoSuchMethodError t) {
-					try {
-						//workaround for Luna Mylyn Client
-						Method m = client.getClass().getMethod("executeQuery", IProgressMonitor.class, String.class); //$NON-NLS-1$
-						changes = (List<GerritQueryResult>) m.invoke(client, SubMonitor.convert(null), "status:open" + projectCondition); //$NON-NLS-1$
-					} catch (Exception e) {
-						throw new GerritException(e);
-					}
-				}
+				index.synchronize(client, SubMonitor.convert(null));
 			} catch (GerritLoginException e) {
 				MessageDialog.openError(shell, "Error", "Cannot login to Gerrit. Please correct your Gerrit setup.");
 				if (TasksUiUtil.openEditRepositoryWizard(client.getRepository()) == Window.OK) {
@@ -102,9 +113,6 @@ public class FetchChangeBranchDialog extends SettingsDialog {
 				throw new RuntimeException("Cannot fetch list of changes from Gerrit", e);
 			}
 		}
-		for (GerritQueryResult res: changes) {
-			new DetailsFetchJob(res.getNumber()).schedule();
-		}
 	}
 	
 	@Override
@@ -139,15 +147,8 @@ public class FetchChangeBranchDialog extends SettingsDialog {
 		change.addModifyListener(new ModifyListener() {
 			@Override
 			public void modifyText(ModifyEvent e) {
-				setFinishEnabled(false);
-				updateChangeId();
-				if (change.getSelectionIndex() >= 0) {
-					GerritQueryResult res = changes.get(change.getSelectionIndex());
-					setSetting(PROP_CHANGE_TITLE, res.getSubject());
-					String b = res.getBranch();
-					branch.setText(b);
-					setSetting(PROP_BRANCH, b);
-					patchSetInitJob.init(res);
+				if (!updatingChanges) {
+					changeSelected();
 				}
 			}
 		});
@@ -161,6 +162,63 @@ public class FetchChangeBranchDialog extends SettingsDialog {
 		createOptionCheckBox(parent, "Checkout new branch", PROP_CHECKOUT, true);
 	}
 	
+	private void changeSelected() {
+		setFinishEnabled(false);
+		updateChangeId();
+		if (change.getSelectionIndex() >= 0) {
+			GerritChangeIndex.Change res = changes.get(change.getSelectionIndex());
+			setSetting(PROP_CHANGE_TITLE, res.getSubject());
+			String b = res.getBranch();
+			branch.setText(b);
+			setSetting(PROP_BRANCH, b);
+			patchSetInitJob.init(res);
+		}
+	}
+	
+	/**
+	 * Replaces the list of changes with refreshed contents of the index,
+	 * keeping the current selection.
+	 */
+	private void updateChanges() {
+		if (change == null || change.isDisposed()) {
+			return;
+		}
+		GerritChangeIndex.Change selected = null;
+		if (change.getSelectionIndex() >= 0) {
+			selected = changes.get(change.getSelectionIndex());
+		}
+		Map<Integer, Long> previous = new HashMap<Integer, Long>();
+		for (GerritChangeIndex.Change c: changes) {
+			previous.put(c.getNumber(), c.getUpdated());
+		}
+		changes = index.getChanges();
+		//patchsets of updated changes need to be fetched again
+		for (GerritChangeIndex.Change c: changes) {
+			Long updated = previous.get(c.getNumber());
+			if (updated != null && updated != c.getUpdated()) {
+				loader.invalidate(c.getNumber());
+			}
+		}
+		updatingChanges = true;
+		try {
+			change.setItems(getGerritChanges());
+			if (selected != null) {
+				for (int i = 0; i < changes.size(); i++) {
+					if (changes.get(i).getNumber() == selected.getNumber()) {
+						change.select(i);
+						break;
+					}
+				}
+			}
+		} finally {
+			updatingChanges = false;
+		}
+		if (selected != null && (change.getSelectionIndex() < 0 
+				|| changes.get(change.getSelectionIndex()).getUpdated() != selected.getUpdated())) {
+			changeSelected();
+		}
+	}
+	
 	private void setFinishEnabled(boolean enabled) {
 		Control button = getButton(IDialogConstants.OK_ID);
 		if (button != null) {
@@ -185,10 +243,10 @@ public class FetchChangeBranchDialog extends SettingsDialog {
 	private String[] getGerritChanges() {
 		String[] res = new String[changes.size()];
 		for (int i = 0; i < res.length; i++) {
-			GerritQueryResult qr = changes.get(i);
-			if (qr.getOwner().getName() != null) {
+			GerritChangeIndex.Change qr = changes.get(i);
+			if (qr.getOwner() != null) {
 				res[i] = MessageFormat.format("{0}: {1} [{2}]", //$NON-NLS-1$
-						Integer.toString(qr.getNumber()), qr.getSubject(), qr.getOwner().getName());
+						Integer.toString(qr.getNumber()), qr.getSubject(), qr.getOwner());
 			} else {
 				res[i] = MessageFormat.format("{0}: {1}", //$NON-NLS-1$
 						Integer.toString(qr.getNumber()), qr.getSubject());
@@ -200,77 +258,96 @@ public class FetchChangeBranchDialog extends SettingsDialog {
 	@Override
 	protected void cancelPressed() {
 		patchSetInitJob.cancel();
+		refreshJob.cancel();
 		super.cancelPressed();
 	}
+	
+	@Override
+	public boolean close() {
+		loader.dispose();
+		return super.close();
+	}
 
 	private class PatchSetListInit extends Job {
 		
-		private GerritQueryResult res;
+		private volatile GerritChangeIndex.Change res;
 		
 		public PatchSetListInit() {
 			super("PatchSet list init job"); //$NON-NLS-1$
 			setSystem(true);
 		}
 		
-		public void init(GerritQueryResult res) {
-			synchronized (details) {
-				ChangeInfo detail = details.get(res.getNumber());
-				if (detail != null) {
-					fillCombo(detail);
+		public void init(GerritChangeIndex.Change res) {
+			this.res = res;
+			if (res.getPatchSetCount() > 0) {
+				fillCombo(res.getPatchSetCount());
+				return;
+			}
+			Future<Integer> future = loader.request(res.getNumber());
+			if (future.isDone() && !future.isCancelled()) {
+				try {
+					fillCombo(future.get());
 					return;
+				} catch (Exception e) {
+					//error is reported by the job
 				}
 			}
 			patchset.setItems(ITEMS_LOADING);
 			patchset.select(0);
 			setFinishEnabled(false);
-			this.res = res;
 			schedule();
 		}
 
 		@Override
 		protected IStatus run(IProgressMonitor monitor) {
-			synchronized (details) {
-				int i = 0;
-				while(i++ < 10) {
-					if (details.containsKey(res.getNumber())) {
-						final ChangeInfo detail = details.get(res.getNumber());
-						if (detail != null) {
-							Display.getDefault().asyncExec(new Runnable() {
-								@Override
-								public void run() {
-									fillCombo(detail);	
-								}
-							});
-							return Status.OK_STATUS;
-						}
-						break;
-					} else {
-						try {
-							details.wait(500);
-						} catch (InterruptedException e) {
-							break;
-						}
+			GerritChangeIndex.Change current = this.res;
+			Future<Integer> future = loader.request(current.getNumber());
+			Integer max = null;
+			try {
+				while (max == null) {
+					if (monitor.isCanceled()) {
+						return Status.CANCEL_STATUS;
+					}
+					if (this.res != current) {
+						//another change has been selected, do not wait for the previous one
+						current = this.res;
+						future = loader.request(current.getNumber());
+					}
+					try {
+						max = future.get(200, TimeUnit.MILLISECONDS);
+					} catch (TimeoutException e) {
+						//check for cancellation
 					}
 				}
+			} catch (ExecutionException e) {
+				GerritToolsPlugin.getDefault().log(e.getCause());
+			} catch (CancellationException e) {
+				//change has been updated and is going to be reinitialized
+				return Status.CANCEL_STATUS;
+			} catch (InterruptedException e) {
+				return Status.CANCEL_STATUS;
 			}
+			final Integer detail = max;
+			final GerritChangeIndex.Change res = current;
 			Display.getDefault().asyncExec(new Runnable() {
 				@Override
 				public void run() {
-					patchset.setItems(new String[] {"Error loading patchsets. See Error Log for details."});
-					patchset.select(0);
-					setFinishEnabled(false);
+					if (patchset.isDisposed() || PatchSetListInit.this.res != res) {
+						return;
+					}
+					if (detail != null) {
+						fillCombo(detail);
+					} else {
+						patchset.setItems(new String[] {"Error loading patchsets. See Error Log for details."});
+						patchset.select(0);
+						setFinishEnabled(false);
+					}
 				}
 			});
 			return Status.OK_STATUS;
 		}
 		
-		private void fillCombo(ChangeInfo detail) {
-			int max = 1;
-			for (RevisionInfo ri: detail.getRevisions().values()) {
-				if (ri.getNumber() > max) {
-					max = ri.getNumber();
-				}
-			}
+		private void fillCombo(int max) {
 			patchset.setItems(new String[] { Integer.toString(max) });
 			patchset.select(0);
 			setFinishEnabled(true);
@@ -278,28 +355,26 @@ public class FetchChangeBranchDialog extends SettingsDialog {
 		
 	}
 	
-	private class DetailsFetchJob extends Job {
-
-		private int reviewId;
+	private class IndexRefreshJob extends Job {
 		
-		public DetailsFetchJob(int reviewId) {
-			super(MessageFormat.format("Fetching details of change {0}", reviewId));
-			this.reviewId = reviewId;
+		public IndexRefreshJob() {
+			super("Refreshing list of Gerrit changes");
+			setSystem(true);
 		}
 		
 		@Override
 		protected IStatus run(IProgressMonitor monitor) {
 			try {
-				ChangeInfo ci = client.getChangeInfo(reviewId, monitor);
-				synchronized (details) {
-					details.put(reviewId, ci);
-					details.notifyAll();
+				if (index.synchronize(client, monitor)) {
+					Display.getDefault().asyncExec(new Runnable() {
+						@Override
+						public void run() {
+							updateChanges();
+						}
+					});
 				}
 			} catch (GerritException e) {
-				synchronized (details) {
-					details.put(reviewId, null);
-					details.notifyAll();
-				}
+				//cached list of changes is still usable
 				GerritToolsPlugin.getDefault().log(e);
 			}
 			return Status.OK_STATUS;
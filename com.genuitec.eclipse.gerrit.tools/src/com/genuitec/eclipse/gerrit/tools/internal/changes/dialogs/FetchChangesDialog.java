@@ -0,0 +1,100 @@
+/**
+ *  Copyright (c) 2015 Genuitec LLC.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Piotr Tomiak <piotr@genuitec.com> - initial API and implementation
+ */
+package com.genuitec.eclipse.gerrit.tools.internal.changes.dialogs;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jface.dialogs.Dialog;
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.mylyn.internal.gerrit.core.client.GerritClient;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.dialogs.ListSelectionDialog;
+
+import com.genuitec.eclipse.gerrit.tools.GerritToolsPlugin;
+import com.genuitec.eclipse.gerrit.tools.internal.changes.GerritChangeIndex;
+import com.genuitec.eclipse.gerrit.tools.utils.GerritUtils;
+
+/**
+ * Allows to choose several open changes to be fetched from Gerrit at once.
+ */
+@SuppressWarnings("restriction")
+public class FetchChangesDialog {
+
+	private Shell shell;
+	private GerritClient client;
+	private GerritChangeIndex index;
+
+	public FetchChangesDialog(Shell shell, Repository repository) {
+		this.shell = shell;
+		client = GerritUtils.getGerritClient(repository, SubMonitor.convert(null));
+		index = GerritChangeIndex.getIndex(GerritUtils.getGerritURL(repository),
+				GerritUtils.getGerritProjectName(repository));
+	}
+
+	public GerritClient getClient() {
+		return client;
+	}
+
+	public GerritChangeIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return chosen changes, empty list if the dialog has been cancelled
+	 */
+	public List<GerritChangeIndex.Change> select() {
+		//list of changes must be complete to choose from it
+		FetchChangeBranchDialog.synchronizeIndex(shell, client, index);
+		ListSelectionDialog dialog = new ListSelectionDialog(shell, index.getChanges(),
+				new ArrayContentProvider(), new ChangesLabelProvider(),
+				"Choose changes to fetch, the latest patchset of each change will be fetched:");
+		dialog.setTitle("Fetch changes from Gerrit");
+		if (dialog.open() == Dialog.OK && dialog.getResult() != null) {
+			List<GerritChangeIndex.Change> result = new ArrayList<GerritChangeIndex.Change>();
+			for (Object o: dialog.getResult()) {
+				result.add((GerritChangeIndex.Change) o);
+			}
+			return result;
+		}
+		return Collections.emptyList();
+	}
+
+	private static class ChangesLabelProvider extends LabelProvider {
+
+		private static Image IMG_CHANGE = GerritToolsPlugin.getDefault().getImage(GerritToolsPlugin.IMG_GERRIT_CHANGE);
+
+		@Override
+		public Image getImage(Object element) {
+			return IMG_CHANGE;
+		}
+
+		@Override
+		public String getText(Object element) {
+			GerritChangeIndex.Change change = (GerritChangeIndex.Change) element;
+			if (change.getOwner() != null) {
+				return MessageFormat.format("{0}: {1} [{2}] ({3})", //$NON-NLS-1$
+						Integer.toString(change.getNumber()), change.getSubject(), change.getOwner(),
+						change.getBranch());
+			}
+			return MessageFormat.format("{0}: {1} ({2})", //$NON-NLS-1$
+					Integer.toString(change.getNumber()), change.getSubject(), change.getBranch());
+		}
+
+	}
+
+}
@@ -0,0 +1,199 @@
+/**
+ *  Copyright (c) 2015 Genuitec LLC.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Piotr Tomiak <piotr@genuitec.com> - initial API and implementation
+ */
+package com.genuitec.eclipse.gerrit.tools.internal.fbranches;
+
+import static com.genuitec.eclipse.gerrit.tools.internal.fbranches.BranchingUtils.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.jgit.lib.Repository;
+
+import com.genuitec.eclipse.gerrit.tools.utils.RepositoryRefsCache;
+
+/**
+ * Provides classified remote branches of repositories. Branches of each repository
+ * are read and classified once and cached until refs of the repository change.
+ */
+public final class BranchCatalogue {
+
+	private static final String ORIGIN_PREFIX = "refs/remotes/origin/"; //$NON-NLS-1$
+	private static final String FEATURES_PREFIX = "features/"; //$NON-NLS-1$
+	private static final String HEADS_PREFIX = "refs/heads/"; //$NON-NLS-1$
+
+	private static final RepositoryRefsCache<RepositoryBranches> cache = 
+			new RepositoryRefsCache<RepositoryBranches>("Reading branches") {
+		@Override
+		protected RepositoryBranches compute(Repository repository) throws IOException {
+			return new RepositoryBranches(repository.getRefDatabase().getRefs(ORIGIN_PREFIX).keySet());
+		}
+	};
+	
+	/**
+	 * @return <code>true</code> if branches of all repositories are available without reading refs
+	 */
+	public static boolean isAvailable(List<Repository> repositories) {
+		return cache.isAvailable(repositories);
+	}
+	
+	/**
+	 * Reads branches of repositories in background.
+	 */
+	public static void prefetch(List<Repository> repositories) {
+		cache.prefetch(repositories);
+	}
+
+	/**
+	 * @return branches of all repositories matching the mode, without duplicates,
+	 * 		in order of the first occurrence
+	 */
+	public static List<String> getBranches(List<Repository> repositories, int mode, String user) throws IOException {
+		Set<String> result = new LinkedHashSet<String>();
+		for (Repository repository: repositories) {
+			result.addAll(cache.get(repository).getBranches(mode, user));
+		}
+		return new ArrayList<String>(result);
+	}
+
+	/**
+	 * Groups feature branches of all repositories by their owners.
+	 * 
+	 * @param excludedUser user whose branches are not included
+	 * @return map of user id to branches of the user, in order of the first occurrence
+	 */
+	public static Map<String, List<String>> getFeatureBranchesByUser(List<Repository> repositories, 
+			String excludedUser) throws IOException {
+		Map<String, Set<String>> merged = new LinkedHashMap<String, Set<String>>();
+		for (Repository repository: repositories) {
+			for (Map.Entry<String, List<String>> entry: cache.get(repository).featuresByUser.entrySet()) {
+				if (entry.getKey().equals(excludedUser)) {
+					continue;
+				}
+				Set<String> branches = merged.get(entry.getKey());
+				if (branches == null) {
+					branches = new LinkedHashSet<String>();
+					merged.put(entry.getKey(), branches);
+				}
+				branches.addAll(entry.getValue());
+			}
+		}
+		Map<String, List<String>> result = new LinkedHashMap<String, List<String>>();
+		for (Map.Entry<String, Set<String>> entry: merged.entrySet()) {
+			result.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<String>(entry.getValue())));
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
+	/**
+	 * @return branches of the repository matching the mode; the list must not be modified
+	 */
+	public static List<String> getBranches(Repository repository, int mode, String user) throws IOException {
+		return cache.get(repository).getBranches(mode, user);
+	}
+
+	/**
+	 * Remote branches of a single repository, classified as stable branches
+	 * and feature branches of particular users.
+	 */
+	private static class RepositoryBranches {
+
+		private final List<String> all = new ArrayList<String>();
+		private final List<String> stable = new ArrayList<String>();
+		private final Map<String, List<String>> featuresByUser = new LinkedHashMap<String, List<String>>();
+		private final ConcurrentMap<String, List<String>> queries = new ConcurrentHashMap<String, List<String>>();
+
+		public RepositoryBranches(Set<String> remoteBranches) {
+			for (String branch: remoteBranches) {
+				String ref = HEADS_PREFIX + branch;
+				all.add(ref);
+				if (branch.indexOf('/') < 0) {
+					stable.add(ref);
+				} else if (branch.startsWith(FEATURES_PREFIX)) {
+					int pos = branch.indexOf('/', FEATURES_PREFIX.length());
+					if (pos > 0) {
+						String user = branch.substring(FEATURES_PREFIX.length(), pos);
+						List<String> features = featuresByUser.get(user);
+						if (features == null) {
+							features = new ArrayList<String>();
+							featuresByUser.put(user, features);
+						}
+						features.add(ref);
+					}
+				}
+			}
+		}
+
+		public List<String> getBranches(int mode, String user) {
+			String key = mode + "/" + user; //$NON-NLS-1$
+			List<String> result = queries.get(key);
+			if (result == null) {
+				result = Collections.unmodifiableList(computeBranches(mode, user));
+				queries.put(key, result);
+			}
+			return result;
+		}
+
+		private List<String> computeBranches(int mode, String user) {
+			List<String> result = new ArrayList<String>();
+			if ((mode & MODE_STABLE) != 0) {
+				result.addAll(stable);
+			}
+			boolean userBranchMode = (mode & MODE_FEATURE_USER) != 0;
+			boolean othersBranchMode = (mode & MODE_FEATURE_OTHERS) != 0;
+			if (userBranchMode && othersBranchMode) {
+				result.addAll(all);
+			} else if (userBranchMode || othersBranchMode) {
+				List<String> userBranches = getUserBranches(user);
+				if (userBranchMode) {
+					result.addAll(userBranches);
+				} else {
+					Set<String> excluded = new HashSet<String>(userBranches);
+					for (String branch: all) {
+						if (!excluded.contains(branch)) {
+							result.add(branch);
+						}
+					}
+				}
+			}
+			return result;
+		}
+
+		private List<String> getUserBranches(String user) {
+			String userName = String.valueOf(user);
+			if (userName.indexOf('/') < 0) {
+				List<String> result = featuresByUser.get(userName);
+				return result != null ? result : Collections.<String>emptyList();
+			}
+			//unusual user name, match branch prefix directly
+			String prefix = HEADS_PREFIX + FEATURES_PREFIX + userName + "/"; //$NON-NLS-1$
+			List<String> result = new ArrayList<String>();
+			for (String branch: all) {
+				if (branch.startsWith(prefix)) {
+					result.add(branch);
+				}
+			}
+			return result;
+		}
+
+	}
+
+	private BranchCatalogue() {}
+
+}
@@ -13,9 +13,11 @@ package com.genuitec.eclipse.gerrit.tools.internal.fbranches;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URISyntaxException;
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -24,8 +26,8 @@ import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.Status;
-import org.eclipse.egit.core.op.DeleteBranchOperation;
 import org.eclipse.egit.core.op.PushOperationSpecification;
 import org.eclipse.egit.ui.Activator;
 import org.eclipse.egit.ui.internal.UIText;
@@ -34,8 +36,17 @@ import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.dialogs.ProgressMonitorDialog;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.jface.window.Window;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.RemoteRefUpdate;
@@ -55,48 +66,26 @@ public final class BranchingUtils {
 	public static final int MODE_FEATURE = MODE_FEATURE_USER + MODE_FEATURE_OTHERS;
 
 	public static List<String> getBranches(List<Repository> repositories, int mode, String user) {
-		List<String> result = new ArrayList<String>();
-		for (Repository repo: repositories) {
-			for (String branch: getBranches(repo, mode, user)) {
-				if (!result.contains(branch)) {
-					result.add(branch);
-				}
-			}
+		try {
+			return BranchCatalogue.getBranches(repositories, mode, user);
+		} catch (Exception e) {
+			GerritToolsPlugin.getDefault().getLog().log(
+					new Status(IStatus.ERROR, GerritToolsPlugin.PLUGIN_ID, "Cannot get list of branches", e));
 		}
-		return result;
+		return new ArrayList<String>();
 	}
 	
 	public static List<String> getBranches(Repository repository, int mode, String user) {
 		if (repository == null) {
 			return getBranches(RepositoryUtils.getAllRepositories(), mode, user);
 		}
-		List<String> result = new ArrayList<String>();
 		try {
-			Map<String, Ref> remoteBranches = repository.getRefDatabase().getRefs("refs/remotes/origin/");
-			if ((mode & MODE_STABLE) != 0) {
-				for (String branch: remoteBranches.keySet()) {
-					if (branch.indexOf('/') < 0) {
-						result.add("refs/heads/" + branch);
-					}
-				}
-			}
-			if ((mode & MODE_FEATURE) != 0) {
-				String prefix = "features/" + user + "/";
-				boolean userBranchMode = (mode & MODE_FEATURE_USER) != 0;
-				boolean othersBranchMode = (mode & MODE_FEATURE_OTHERS) != 0;
-				for (String branch: remoteBranches.keySet()) {
-					boolean userPrefixMatched = branch.startsWith(prefix);
-					if ( (userPrefixMatched && userBranchMode) ||
-							(!userPrefixMatched && othersBranchMode)) {
-						result.add("refs/heads/" + branch);
-					}
-				}
-			}
+			return new ArrayList<String>(BranchCatalogue.getBranches(repository, mode, user));
 		} catch (Exception e) {
 			GerritToolsPlugin.getDefault().getLog().log(
 					new Status(IStatus.ERROR, GerritToolsPlugin.PLUGIN_ID, "Cannot get list of branches", e));
 		}
-		return result;
+		return new ArrayList<String>();
 	}
 	
 	public static PushOperationSpecification setupPush(Repository repository, String refSpec) throws IOException, URISyntaxException {
@@ -179,20 +168,31 @@ public final class BranchingUtils {
 			ResourcesPlugin.getWorkspace().run(new IWorkspaceRunnable() {
 
 				public void run(IProgressMonitor monitor) throws CoreException {
-					monitor.beginTask(UIText.DeleteBranchCommand_DeletingBranchesProgress, nodes.size());
-					for (Ref refNode : nodes) {
-						int result = deleteBranch(repository, 
-								refNode, forceDeletionOfUnmergedBranches);
-						if (result == DeleteBranchOperation.REJECTED_CURRENT) {
-							throw new CoreException(
-									Activator
-									.createErrorStatus(
-											UIText.DeleteBranchCommand_CannotDeleteCheckedOutBranch,
-											null));
-						} else if (result == DeleteBranchOperation.REJECTED_UNMERGED) {
-							unmergedNodes.add(refNode);
-						} else
-							monitor.worked(1);
+					monitor.beginTask(UIText.DeleteBranchCommand_DeletingBranchesProgress, 3);
+					try {
+						String currentBranch = repository.getFullBranch();
+						for (Ref refNode: nodes) {
+							if (refNode.getName().equals(currentBranch)) {
+								throw new CoreException(
+										Activator
+										.createErrorStatus(
+												UIText.DeleteBranchCommand_CannotDeleteCheckedOutBranch,
+												null));
+							}
+						}
+						List<Ref> toDelete = new ArrayList<Ref>(nodes);
+						if (!forceDeletionOfUnmergedBranches) {
+							unmergedNodes.addAll(findUnmergedBranches(repository, nodes));
+							toDelete.removeAll(unmergedNodes);
+						}
+						monitor.worked(1);
+						deleteRefs(repository, toDelete);
+						monitor.worked(1);
+						removeBranchConfig(repository, toDelete);
+						monitor.worked(1);
+					} catch (IOException e) {
+						throw new CoreException(new Status(IStatus.ERROR, GerritToolsPlugin.PLUGIN_ID, 
+								e.getLocalizedMessage(), e));
 					}
 				}
 			}, progressMonitor);
@@ -205,11 +205,94 @@ public final class BranchingUtils {
 		return unmergedNodes;
 	}
 
-	private static int deleteBranch(final Repository repo, final Ref ref, boolean force)
-			throws CoreException {
-		DeleteBranchOperation dbop = new DeleteBranchOperation(repo, ref, force);
-		dbop.execute(null);
-		return dbop.getStatus();
+	/**
+	 * Finds branches which are not merged into HEAD using a single walk. The walk starts
+	 * from tips of all branches and stops at commits reachable from HEAD, so
+	 * only tips of unmerged branches are produced.
+	 */
+	private static List<Ref> findUnmergedBranches(Repository repository, List<Ref> refs) throws IOException {
+		List<Ref> result = new ArrayList<Ref>();
+		RevWalk walk = new RevWalk(repository);
+		try {
+			Map<RevCommit, List<Ref>> tips = new HashMap<RevCommit, List<Ref>>();
+			for (Ref ref: refs) {
+				ObjectId id = ref.getObjectId();
+				if (id == null) {
+					continue;
+				}
+				RevCommit tip = walk.parseCommit(id);
+				List<Ref> tipRefs = tips.get(tip);
+				if (tipRefs == null) {
+					tipRefs = new ArrayList<Ref>();
+					tips.put(tip, tipRefs);
+					walk.markStart(tip);
+				}
+				tipRefs.add(ref);
+			}
+			ObjectId head = repository.resolve(Constants.HEAD);
+			if (head != null) {
+				walk.markUninteresting(walk.parseCommit(head));
+			}
+			for (RevCommit commit: walk) {
+				List<Ref> tipRefs = tips.remove(commit);
+				if (tipRefs != null) {
+					result.addAll(tipRefs);
+					if (tips.isEmpty()) {
+						break;
+					}
+				}
+			}
+		} finally {
+			walk.close();
+		}
+		return result;
+	}
+
+	private static void deleteRefs(Repository repository, List<Ref> refs) throws IOException, CoreException {
+		if (refs.isEmpty()) {
+			return;
+		}
+		BatchRefUpdate update = repository.getRefDatabase().newBatchUpdate();
+		update.setRefLogMessage("branch deleted", false); //$NON-NLS-1$
+		for (Ref ref: refs) {
+			update.addCommand(new ReceiveCommand(ref.getObjectId(), ObjectId.zeroId(), 
+					ref.getName(), ReceiveCommand.Type.DELETE));
+		}
+		RevWalk walk = new RevWalk(repository);
+		try {
+			update.execute(walk, NullProgressMonitor.INSTANCE);
+		} finally {
+			walk.close();
+		}
+		MultiStatus result = new MultiStatus(GerritToolsPlugin.PLUGIN_ID, 0, "Cannot delete branches", null);
+		for (ReceiveCommand command: update.getCommands()) {
+			if (command.getResult() != ReceiveCommand.Result.OK) {
+				result.add(new Status(IStatus.ERROR, GerritToolsPlugin.PLUGIN_ID, MessageFormat.format(
+						"{0}: {1}", command.getRefName(), command.getMessage() != null ?  //$NON-NLS-1$
+								command.getMessage() : command.getResult().name())));
+			}
+		}
+		if (!result.isOK()) {
+			throw new CoreException(result);
+		}
+	}
+
+	private static void removeBranchConfig(Repository repository, List<Ref> refs) throws IOException {
+		StoredConfig config = repository.getConfig();
+		boolean modified = false;
+		for (Ref ref: refs) {
+			String name = ref.getName();
+			if (name.startsWith(Constants.R_HEADS)) {
+				String shortName = name.substring(Constants.R_HEADS.length());
+				if (config.getNames(ConfigConstants.CONFIG_BRANCH_SECTION, shortName).size() > 0) {
+					config.unsetSection(ConfigConstants.CONFIG_BRANCH_SECTION, shortName);
+					modified = true;
+				}
+			}
+		}
+		if (modified) {
+			config.save();
+		}
 	}
 	
 	private BranchingUtils() {}
@@ -14,6 +14,7 @@ import static com.genuitec.eclipse.gerrit.tools.internal.fbranches.BranchingUtil
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -29,6 +30,8 @@ import org.eclipse.jgit.lib.Repository;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.CoolBar;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Menu;
 import org.eclipse.swt.widgets.MenuItem;
 import org.eclipse.swt.widgets.ToolBar;
@@ -40,7 +43,9 @@ import org.eclipse.ui.menus.IWorkbenchContribution;
 import org.eclipse.ui.services.IServiceLocator;
 
 import com.genuitec.eclipse.gerrit.tools.GerritToolsPlugin;
+import com.genuitec.eclipse.gerrit.tools.internal.fbranches.BranchCatalogue;
 import com.genuitec.eclipse.gerrit.tools.internal.fbranches.BranchingUtils;
+import com.genuitec.eclipse.gerrit.tools.internal.utils.commands.LoadingContributionItem;
 import com.genuitec.eclipse.gerrit.tools.utils.RepositoryUtils;
 
 @SuppressWarnings({ "nls", "restriction" })
@@ -101,7 +106,12 @@ public class BranchActionsProvider extends CompoundContributionItem implements I
 	
 	private IContributionItem[] createPerBranchContributionItems(List<Repository> repositories, 
 			String cmdId, int mode, String user) {
-		List<String> branches = BranchingUtils.getBranches(repositories, mode, user);
+		return createPerBranchContributionItems(repositories, cmdId, mode, 
+				BranchingUtils.getBranches(repositories, mode, user));
+	}
+	
+	private IContributionItem[] createPerBranchContributionItems(List<Repository> repositories, 
+			String cmdId, int mode, List<String> branches) {
 		List<IContributionItem> result = new ArrayList<IContributionItem>();
 		String curBranch = null;
 		try {
@@ -148,25 +158,26 @@ public class BranchActionsProvider extends CompoundContributionItem implements I
 	}
 
 	private IContributionItem[] getOthersFeatureBranchesItems(List<Repository> repositories, String cmdId) {
-		List<String> branches = BranchingUtils.getBranches(repositories, 
-				BranchingUtils.MODE_FEATURE_OTHERS, getUserId(repositories));
+		String userId = getUserId(repositories);
+		List<Repository> repos = repositories != null ? repositories : RepositoryUtils.getAllRepositories();
+		if (!BranchCatalogue.isAvailable(repos)) {
+			//do not block UI thread on reading refs, branches will be available next time
+			BranchCatalogue.prefetch(repos);
+			return new IContributionItem[] { new Separator(), new LoadingContributionItem("Loading branches...") };
+		}
+		Map<String, List<String>> branchesByUser;
+		try {
+			branchesByUser = BranchCatalogue.getFeatureBranchesByUser(repos, userId);
+		} catch (IOException e) {
+			GerritToolsPlugin.getDefault().log(e);
+			return new IContributionItem[0];
+		}
 		List<IContributionItem> result = new ArrayList<IContributionItem>();
-		List<String> users = new ArrayList<String>();
-		for (String branch: branches) {
-			if (branch.startsWith("refs/heads/features/")) {
-				branch = branch.substring("refs/heads/features/".length());
-				int pos = branch.indexOf('/');
-				if (pos > 0) {
-					String user = branch.substring(0, pos);
-					if (!users.contains(user)){
-						users.add(user);
-						if (result.isEmpty()) {
-							result.add(new Separator());
-						}
-						result.add(new OthersBranchesActionProvider(user, repositories, cmdId));
-					}
-				}
+		for (Map.Entry<String, List<String>> entry: branchesByUser.entrySet()) {
+			if (result.isEmpty()) {
+				result.add(new Separator());
 			}
+			result.add(new OthersBranchesActionProvider(entry.getKey(), entry.getValue(), repositories, cmdId));
 		}
 		return result.toArray(new IContributionItem[result.size()]);
 	}
@@ -179,11 +190,14 @@ public class BranchActionsProvider extends CompoundContributionItem implements I
 	private class OthersBranchesActionProvider extends ContributionItem {
 
 		private String userId;
+		private List<String> branches;
 		private List<Repository> repositories;
 		private String cmdId;
 
-		public OthersBranchesActionProvider(String userId, List<Repository> repositories, String cmdId) {
+		public OthersBranchesActionProvider(String userId, List<String> branches, 
+				List<Repository> repositories, String cmdId) {
 			this.userId = userId;
+			this.branches = branches;
 			this.repositories = repositories;
 			this.cmdId = cmdId;
 			setId(cmdId + "." + userId);
@@ -194,12 +208,29 @@ public class BranchActionsProvider extends CompoundContributionItem implements I
 			MenuItem item = new MenuItem(menu, SWT.CASCADE);
 			item.setText(userId);
 			item.setImage(GerritToolsPlugin.getDefault().getImageRegistry().get(GerritToolsPlugin.IMG_FEATURE_BRANCH_OWNER));
-			Menu subMenu = new Menu(menu);
+			final Menu subMenu = new Menu(menu);
 			item.setMenu(subMenu);
-			for (IContributionItem sub: createPerBranchContributionItems(repositories, 
-					cmdId, MODE_FEATURE_USER, userId)) {
-				sub.fill(item.getMenu(), -1);
-			}
+			//create branch items only when the submenu is opened
+			final List<IContributionItem> items = new ArrayList<IContributionItem>();
+			subMenu.addListener(SWT.Show, new Listener() {
+				public void handleEvent(Event event) {
+					if (!items.isEmpty()) {
+						return;
+					}
+					items.addAll(Arrays.asList(createPerBranchContributionItems(repositories, 
+							cmdId, MODE_FEATURE_USER, branches)));
+					for (IContributionItem sub: items) {
+						sub.fill(subMenu, -1);
+					}
+				}
+			});
+			subMenu.addListener(SWT.Dispose, new Listener() {
+				public void handleEvent(Event event) {
+					for (IContributionItem sub: items) {
+						sub.dispose();
+					}
+				}
+			});
 		}
 		
 		@Override
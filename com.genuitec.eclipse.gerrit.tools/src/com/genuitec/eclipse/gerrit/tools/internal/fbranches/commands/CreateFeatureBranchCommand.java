@@ -23,13 +23,12 @@ import org.eclipse.core.runtime.Status;
 import org.eclipse.egit.core.op.PushOperationResult;
 import org.eclipse.egit.core.op.PushOperationSpecification;
 import org.eclipse.egit.ui.internal.credentials.EGitCredentialsProvider;
-import org.eclipse.egit.ui.internal.fetch.FetchOperationUI;
 import org.eclipse.egit.ui.internal.push.PushOperationUI;
 import org.eclipse.jface.dialogs.IDialogConstants;
 import org.eclipse.jface.dialogs.ProgressMonitorDialog;
 import org.eclipse.jface.operation.IRunnableWithProgress;
+import org.eclipse.jface.util.Policy;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.URIish;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.handlers.HandlerUtil;
@@ -48,8 +47,9 @@ public class CreateFeatureBranchCommand extends FeatureBranchCommand {
         Shell shell = HandlerUtil.getActiveShell(event);
         
         //fetch remote branches
-        for (Repository repository: repositories) {
-        	RepositoryUtils.fetchOrigin(shell, repository);
+        IStatus fetchResult = RepositoryUtils.fetchOrigin(shell, repositories);
+        if (fetchResult.getSeverity() >= IStatus.WARNING && fetchResult.getSeverity() != IStatus.CANCEL) {
+        	Policy.getStatusHandler().show(fetchResult, "Results of the operation");
         }
         
         //configure branch creation
@@ -122,9 +122,7 @@ public class CreateFeatureBranchCommand extends FeatureBranchCommand {
 				}
 			}
 			
-			FetchOperationUI fetchOp = new FetchOperationUI(repository, new RemoteConfig(repository.getConfig(), "origin"), false);
-			fetchOp.setCredentialsProvider(new EGitCredentialsProvider());
-			fetchOp.execute(monitor);
+			RepositoryUtils.fetchOrigin(repository, monitor);
 		}
     }
 	
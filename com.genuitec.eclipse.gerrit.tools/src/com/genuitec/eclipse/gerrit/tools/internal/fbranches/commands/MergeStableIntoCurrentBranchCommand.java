@@ -31,8 +31,6 @@ import org.eclipse.core.runtime.jobs.JobChangeAdapter;
 import org.eclipse.egit.core.internal.CoreText;
 import org.eclipse.egit.core.op.MergeOperation;
 import org.eclipse.egit.ui.internal.UIText;
-import org.eclipse.egit.ui.internal.credentials.EGitCredentialsProvider;
-import org.eclipse.egit.ui.internal.fetch.FetchOperationUI;
 import org.eclipse.egit.ui.internal.merge.MergeResultDialog;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.dialogs.ProgressMonitorDialog;
@@ -43,7 +41,6 @@ import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.RepositoryState;
-import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Shell;
@@ -216,10 +213,7 @@ public class MergeStableIntoCurrentBranchCommand extends FeatureBranchCommand {
 		}
 		
 		private void fetchOrigin(IProgressMonitor monitor) throws Exception {
-			FetchOperationUI fetchOp = new FetchOperationUI(repository, 
-					new RemoteConfig(repository.getConfig(), "origin"), false); //$NON-NLS-1$
-			fetchOp.setCredentialsProvider(new EGitCredentialsProvider());
-			fetchOp.execute(monitor);
+			RepositoryUtils.fetchOrigin(repository, monitor);
 		}		
 		
     }
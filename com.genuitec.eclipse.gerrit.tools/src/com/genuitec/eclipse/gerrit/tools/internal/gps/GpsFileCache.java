@@ -0,0 +1,119 @@
+/**
+ *  Copyright (c) 2015 Genuitec LLC.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Piotr Tomiak <piotr@genuitec.com> - initial API and implementation
+ */
+package com.genuitec.eclipse.gerrit.tools.internal.gps;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+import com.genuitec.eclipse.gerrit.tools.GerritToolsPlugin;
+import com.genuitec.eclipse.gerrit.tools.internal.gps.model.GpsFile;
+import com.genuitec.eclipse.gerrit.tools.internal.gps.model.GpsFileException;
+
+/**
+ * Keeps parsed GPS files in a binary form in the plugin state location. A cached
+ * file is used as long as path, modification time and size of the GPS file match,
+ * so importing the same project set again does not parse XML. State of repositories
+ * is not cached and is always determined when the model is created.
+ */
+public class GpsFileCache {
+
+	private static final String CACHE_FOLDER = "gps-cache"; //$NON-NLS-1$
+	private static final int VERSION = 1;
+
+	/**
+	 * Loads the GPS file, either from the cache, or by parsing it and storing the result
+	 * in the cache.
+	 * @param file
+	 * @throws GpsFileException
+	 */
+	public static synchronized GpsFile load(File file) throws GpsFileException {
+		File cacheFile = getCacheFile(file);
+		GpsFile result = loadCached(file, cacheFile);
+		if (result != null) {
+			return result;
+		}
+		result = new GpsFile();
+		try {
+			result.loadFromStream(new FileInputStream(file));
+		} catch (GpsFileException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new GpsFileException("Error reading GPS file. See error log for details.", e);
+		}
+		store(file, cacheFile, result);
+		return result;
+	}
+
+	private static GpsFile loadCached(File file, File cacheFile) {
+		if (!cacheFile.isFile()) {
+			return null;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+			try {
+				if (in.readInt() != VERSION
+						|| !in.readUTF().equals(file.getAbsolutePath())
+						|| in.readLong() != file.lastModified()
+						|| in.readLong() != file.length()) {
+					return null;
+				}
+				GpsFile result = new GpsFile();
+				result.loadFromCache(in);
+				return result;
+			} finally {
+				in.close();
+			}
+		} catch (Exception e) {
+			GerritToolsPlugin.getDefault().log("Cannot read cached GPS file " + file, e); //$NON-NLS-1$
+			cacheFile.delete();
+			return null;
+		}
+	}
+
+	private static void store(File file, File cacheFile, GpsFile gpsFile) {
+		File tmpFile = new File(cacheFile.getPath() + ".tmp"); //$NON-NLS-1$
+		try {
+			cacheFile.getParentFile().mkdirs();
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile, false)));
+			try {
+				out.writeInt(VERSION);
+				out.writeUTF(file.getAbsolutePath());
+				out.writeLong(file.lastModified());
+				out.writeLong(file.length());
+				gpsFile.saveToCache(out);
+			} finally {
+				out.close();
+			}
+			cacheFile.delete();
+			if (!tmpFile.renameTo(cacheFile)) {
+				tmpFile.delete();
+			}
+		} catch (Exception e) {
+			GerritToolsPlugin.getDefault().log("Cannot cache GPS file " + file, e); //$NON-NLS-1$
+			tmpFile.delete();
+		}
+	}
+
+	private static File getCacheFile(File file) {
+		String path = file.getAbsolutePath();
+		return GerritToolsPlugin.getDefault().getStateLocation().append(CACHE_FOLDER)
+				.append(file.getName() + "_" + Integer.toHexString(path.hashCode()) + ".bin") //$NON-NLS-1$ //$NON-NLS-2$
+				.toFile();
+	}
+
+	private GpsFileCache() {}
+
+}
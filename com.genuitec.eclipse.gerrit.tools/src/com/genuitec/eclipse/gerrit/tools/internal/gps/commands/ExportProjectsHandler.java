@@ -13,19 +13,24 @@ package com.genuitec.eclipse.gerrit.tools.internal.gps.commands;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.commands.AbstractHandler;
 import org.eclipse.core.commands.ExecutionEvent;
 import org.eclipse.core.commands.ExecutionException;
 import org.eclipse.core.resources.IProject;
-import org.eclipse.core.resources.IWorkspace;
-import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.SubProgressMonitor;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.dialogs.ProgressMonitorDialog;
 import org.eclipse.jface.operation.IRunnableWithProgress;
@@ -38,11 +43,10 @@ import com.genuitec.eclipse.gerrit.tools.GerritToolsPlugin;
 import com.genuitec.eclipse.gerrit.tools.internal.gps.dialogs.ExportProjectsDialog;
 import com.genuitec.eclipse.gerrit.tools.internal.gps.model.GpsFile;
 import com.genuitec.eclipse.gerrit.tools.internal.gps.model.GpsProject;
+import com.genuitec.eclipse.gerrit.tools.utils.ParallelTaskRunner;
 
 public class ExportProjectsHandler extends AbstractHandler {
 	
-	private static IWorkspace workspace = ResourcesPlugin.getWorkspace();
-	
 	public Object execute(ExecutionEvent event) throws ExecutionException {
 		Shell shell = HandlerUtil.getActiveShell(event);
 		
@@ -100,26 +104,47 @@ public class ExportProjectsHandler extends AbstractHandler {
 		
 		public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
 			try {
-				workspace.run(new IWorkspaceRunnable() {
-					public void run(IProgressMonitor monitor) throws CoreException {
-						performExport(monitor);
-					}
-				}, monitor);
+				performExport(monitor);
+			} catch (OperationCanceledException e) {
+				throw new InterruptedException();
 			} catch (Exception e) {
 				throw new InvocationTargetException(e, e.getLocalizedMessage());
 			}
 		}
 		
 		private void performExport(IProgressMonitor monitor) throws CoreException {
-			monitor.beginTask("Exporting projects...", projects.size());
+			monitor.beginTask("Exporting projects...", projects.size() + 1);
 			monitor.setTaskName("Exporting projects...");
-			for (IProject project: projects) {
-				if (monitor.isCanceled()) return;
-				GpsProject gp = GpsProject.createForProject(project);
+			
+			//scan working sets once for all projects
+			final Map<IProject, Set<String>> workingSets = GpsProject.getWorkingSetsIndex();
+			monitor.worked(1);
+			
+			//resolve repositories of projects in parallel, keeping order of projects
+			final GpsProject[] result = new GpsProject[projects.size()];
+			List<ParallelTaskRunner.ITask> tasks = new ArrayList<ParallelTaskRunner.ITask>(projects.size());
+			for (int i = 0; i < projects.size(); i++) {
+				final int index = i;
+				final IProject project = projects.get(i);
+				tasks.add(new ParallelTaskRunner.ITask() {
+					public String getName() {
+						return project.getName();
+					}
+					public IStatus run(SubMonitor monitor) throws CoreException {
+						result[index] = GpsProject.createForProject(project, workingSets.get(project));
+						return null;
+					}
+				});
+			}
+			MultiStatus status = ParallelTaskRunner.run("Problems occurred while exporting projects", 
+					tasks, ParallelTaskRunner.DEFAULT_PARALLELISM, new SubProgressMonitor(monitor, projects.size()), 1);
+			if (status.getSeverity() >= IStatus.ERROR) {
+				throw new CoreException(status);
+			}
+			for (GpsProject gp: result) {
 				if (gp != null) {
 					file.getProjects().add(gp);
 				}
-				monitor.worked(1);
 			}
 			monitor.done();
 		}
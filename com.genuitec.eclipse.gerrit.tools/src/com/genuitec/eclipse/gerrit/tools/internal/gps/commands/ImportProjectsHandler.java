@@ -10,12 +10,14 @@
  */
 package com.genuitec.eclipse.gerrit.tools.internal.gps.commands;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -31,6 +33,7 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IAdaptable;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.egit.core.GitProvider;
@@ -48,10 +51,15 @@ import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.handlers.HandlerUtil;
 
 import com.genuitec.eclipse.gerrit.tools.GerritToolsPlugin;
+import com.genuitec.eclipse.gerrit.tools.internal.gps.GpsFileCache;
 import com.genuitec.eclipse.gerrit.tools.internal.gps.dialogs.ImportProjectsDialog;
 import com.genuitec.eclipse.gerrit.tools.internal.gps.dialogs.ObsoleteProjectsDialog;
 import com.genuitec.eclipse.gerrit.tools.internal.gps.model.GpsFile;
+import com.genuitec.eclipse.gerrit.tools.internal.gps.model.GpsImportJournal;
+import com.genuitec.eclipse.gerrit.tools.internal.gps.model.GpsImportPlan;
+import com.genuitec.eclipse.gerrit.tools.internal.gps.model.GpsImportPlan.ProjectAction;
 import com.genuitec.eclipse.gerrit.tools.internal.gps.model.GpsProject;
+import com.genuitec.eclipse.gerrit.tools.internal.gps.model.GpsProjectImporter;
 import com.genuitec.eclipse.gerrit.tools.internal.gps.model.IGpsRepositoriesConfig;
 
 @SuppressWarnings("restriction")
@@ -82,22 +90,18 @@ public class ImportProjectsHandler extends AbstractHandler {
 		}
         
         if (fileName != null) {
-	        GpsFile gpsFile = new GpsFile();
 	        try {
-	        	FileInputStream fis = new FileInputStream(fileName);
-	        	try {
-	        		gpsFile.loadFromStream(fis);
-	        	} finally {
-	        		fis.close();
-	        	}
+	        	final GpsFile gpsFile = GpsFileCache.load(new File(fileName));
 				
-				ImportProjectsDialog importDialog = new ImportProjectsDialog(shell, gpsFile);
+				//steps are planned by the dialog, transfers are estimated on demand
+				ImportProjectsDialog importDialog = new ImportProjectsDialog(shell, gpsFile, new GpsImportPlan());
 				if (importDialog.open() != IDialogConstants.OK_ID) {
 				    return null;
 				}
 				
 				ProgressMonitorDialog progressDialog = new ProgressMonitorDialog(shell);
-				progressDialog.run(true, true, new ImportOperation(gpsFile, importDialog.getSettings(), progressDialog));
+				progressDialog.run(true, true, new ImportOperation(new File(fileName), gpsFile, 
+						importDialog.getSettings(), progressDialog));
 			} catch (InterruptedException e) {
 				//ignore
 			} catch (Exception e) {
@@ -110,12 +114,15 @@ public class ImportProjectsHandler extends AbstractHandler {
 	
 	private static class ImportOperation implements IRunnableWithProgress {
 
+		private File gpsFile;
 		private GpsFile file;
 		private ProgressMonitorDialog progressDialog;
 		private int dialogResult;
 		private Map<String, Object> options;
 		
-		public ImportOperation(GpsFile file, Map<String, Object> options, ProgressMonitorDialog progressDialog) {
+		public ImportOperation(File gpsFile, GpsFile file, Map<String, Object> options, 
+				ProgressMonitorDialog progressDialog) {
+			this.gpsFile = gpsFile;
 			this.file = file;
 			this.progressDialog = progressDialog;
 			this.options = options;
@@ -123,11 +130,9 @@ public class ImportProjectsHandler extends AbstractHandler {
 		
 		public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
 			try {
-				workspace.run(new IWorkspaceRunnable() {
-					public void run(IProgressMonitor monitor) throws CoreException {
-						performImport(monitor);
-					}
-				}, monitor);
+				performImport(monitor);
+			} catch (OperationCanceledException e) {
+				throw new InterruptedException();
 			} catch (Exception e) {
 				throw new InvocationTargetException(e, e.getLocalizedMessage());
 			}
@@ -139,47 +144,48 @@ public class ImportProjectsHandler extends AbstractHandler {
 			monitor.setTaskName("Initializing Git Team provider...");
 			RepositoryProviderType.getProviderType(GitProvider.class.getName());
 			
-			HashSet<String> projectSet = new HashSet<String>();
-			for (IProject prj: Arrays.asList(workspace.getRoot().getProjects())) {
-				projectSet.add(prj.getName());
+			//pulls completed by a previous, failed or cancelled, import are not repeated
+			GpsImportJournal journal = GpsImportJournal.open(gpsFile);
+			if (journal.isResumed()) {
+				monitor.setTaskName("Resuming import...");
+			}
+			
+			//compare repositories with the GPS file and set up only those which differ
+			GpsImportPlan plan = new GpsImportPlan();
+			plan.setJournal(journal);
+			for (IGpsRepositoriesConfig config: file.getRepositoryConfigs()) {
+				config.planConfiguration(plan, options);
 			}
-
 			SubMonitor repoSetup = monitor.newChild(400, 0);
 			repoSetup.beginTask("Preparing git repositories...", file.getRepositoryConfigs().size()*20);
 			for (IGpsRepositoriesConfig config: file.getRepositoryConfigs()) {
-				config.performConfiguration(options, repoSetup.newChild(20, SubMonitor.SUPPRESS_BEGINTASK));
+				config.performConfiguration(plan, options, repoSetup.newChild(20, SubMonitor.SUPPRESS_BEGINTASK));
 			}
+			plan.planProjects(file.getProjects());
 			
-			//initialize set to detect obsolete projects
-			final Set<IProject> obsoleteProjects = new HashSet<IProject>();
-			for (IProject project: ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
-				if (project.isAccessible()) {
-					obsoleteProjects.add(project);
-				}
-			}
+			final Set<IProject> obsoleteProjects = plan.getObsoleteProjects();
 			
-			//first pass is to check if everything is ok
+			//first pass is to check what needs to be imported
 			boolean replaceAll = false;
 			boolean skipAll = false;
+			List<GpsProject> toImport = new ArrayList<GpsProject>();
+			final List<IProject> toReplace = new ArrayList<IProject>();
 			monitor.setWorkRemaining(file.getProjects().size()*10);
-			monitor = monitor.newChild(file.getProjects().size()*10, 0);
+			SubMonitor checkMonitor = monitor.newChild(file.getProjects().size(), 0);
+			checkMonitor.beginTask("Checking projects...", file.getProjects().size());
 			for (GpsProject gpsProject: file.getProjects()) {
 				
-				if (monitor.isCanceled()) return;
-				SubMonitor projectMonitor = monitor.newChild(10, 0);
-				projectMonitor.beginTask("Importing project " + gpsProject.getName(), 2);
+				if (checkMonitor.isCanceled()) return;
 				//check if any project already exists in the workspace
 				boolean skipImport = false;
 				
 				IProject project = workspace.getRoot().getProject(gpsProject.getName());
 				
-				obsoleteProjects.remove(project);
-				
-				boolean existingProject = projectSet.contains(gpsProject.getName());
+				ProjectAction action = plan.getProjectAction(gpsProject);
 				
-				skipImport = existingProject && !gpsProject.getRepositoryHandler().requiresImport();
+				skipImport = action == ProjectAction.NONE;
 						
-				if (!skipImport && existingProject) {
+				if (action == ProjectAction.REPLACE) {
 					skipImport = skipAll;
 					if (!skipAll && !replaceAll) {
 						openDialog("Do you want to replace project {0}", gpsProject.getName());
@@ -193,36 +199,65 @@ public class ImportProjectsHandler extends AbstractHandler {
 						}
 					}
 					if (!skipImport) {
-						project.delete(false, true, projectMonitor.newChild(1));
+						toReplace.add(project);
 					}
 				}
-				if (projectMonitor.isCanceled()) return;
-
-				//import the project into workspace
 				if (!skipImport) {
-					project = gpsProject.getRepositoryHandler().importProject(projectMonitor.newChild(1));
-					if (projectMonitor.isCanceled()) return;
+					toImport.add(gpsProject);
 				}
+				checkMonitor.worked(1);
+			}
+			
+			//remove replaced projects in a single workspace operation
+			SubMonitor deleteMonitor = monitor.newChild(file.getProjects().size(), 0);
+			if (!toReplace.isEmpty()) {
+				workspace.run(new IWorkspaceRunnable() {
+					public void run(IProgressMonitor m) throws CoreException {
+						SubMonitor monitor = SubMonitor.convert(m, "Removing replaced projects...", toReplace.size());
+						for (IProject project: toReplace) {
+							project.delete(false, true, monitor.newChild(1));
+						}
+					}
+				}, workspace.getRoot(), IWorkspace.AVOID_UPDATE, deleteMonitor);
+			}
+			if (monitor.isCanceled()) return;
+			
+			//import projects
+			CoreException importProblems = null;
+			try {
+				new GpsProjectImporter(options).importProjects(toImport, 
+						monitor.newChild(file.getProjects().size()*7, 0));
+			} catch (CoreException e) {
+				//assign working sets to successfully imported projects first
+				importProblems = e;
+			}
+			if (monitor.isCanceled()) return;
 				
-				//add project to working sets
+			//collect working set assignments and apply them at once, so that every
+			//working set is changed, and listeners are notified, only once
+			SubMonitor workingSetsMonitor = monitor.newChild(file.getProjects().size(), 0);
+			workingSetsMonitor.beginTask("Updating working sets...", file.getProjects().size() + 1);
+			Map<String, List<IAdaptable>> assignments = new LinkedHashMap<String, List<IAdaptable>>();
+			for (GpsProject gpsProject: file.getProjects()) {
+				IProject project = workspace.getRoot().getProject(gpsProject.getName());
 				if (project.isAccessible()) {
-					List<IWorkingSet> sets = new ArrayList<IWorkingSet>();
-					for (String workingSet: gpsProject.getWorkingSets()) {
-						IWorkingSet set = workingSetManager.getWorkingSet(workingSet);
-						if (set == null) {
-							set = workingSetManager.createWorkingSet(workingSet, new IAdaptable[0]);
-							set.setId("org.eclipse.jdt.ui.JavaWorkingSetPage");
-							workingSetManager.addWorkingSet(set);
+					for (String workingSet: plan.getMissingWorkingSets(gpsProject)) {
+						List<IAdaptable> elements = assignments.get(workingSet);
+						if (elements == null) {
+							elements = new ArrayList<IAdaptable>();
+							assignments.put(workingSet, elements);
 						}
-						sets.add(set);
-					}
-					if (sets.size() > 0) {
-						workingSetManager.addToWorkingSets(project, sets.toArray(new IWorkingSet[sets.size()]));
+						elements.add(project);
 					}
 				}
-				projectMonitor.done();
-				
+				workingSetsMonitor.worked(1);
 			}
+			updateWorkingSets(assignments);
+			workingSetsMonitor.worked(1);
+			if (importProblems != null) {
+				throw importProblems;
+			}
+			journal.finish();
 			
 			if (!obsoleteProjects.isEmpty()) {
 				progressDialog.getShell().getDisplay().syncExec(
@@ -244,6 +279,26 @@ public class ImportProjectsHandler extends AbstractHandler {
 			
 		}
 		
+		private void updateWorkingSets(Map<String, List<IAdaptable>> assignments) {
+			for (Map.Entry<String, List<IAdaptable>> entry: assignments.entrySet()) {
+				IWorkingSet set = workingSetManager.getWorkingSet(entry.getKey());
+				if (set == null) {
+					set = workingSetManager.createWorkingSet(entry.getKey(), new IAdaptable[0]);
+					set.setId("org.eclipse.jdt.ui.JavaWorkingSetPage");
+					set.setElements(set.adaptElements(toArray(entry.getValue())));
+					workingSetManager.addWorkingSet(set);
+				} else {
+					Set<IAdaptable> elements = new LinkedHashSet<IAdaptable>(Arrays.asList(set.getElements()));
+					elements.addAll(Arrays.asList(set.adaptElements(toArray(entry.getValue()))));
+					set.setElements(toArray(elements));
+				}
+			}
+		}
+		
+		private IAdaptable[] toArray(Collection<IAdaptable> elements) {
+			return elements.toArray(new IAdaptable[elements.size()]);
+		}
+		
 		private void openDialog(final String message, final Object... params) {
 			progressDialog.getShell().getDisplay().syncExec(new Runnable() {
 
@@ -10,9 +10,21 @@
  */
 package com.genuitec.eclipse.gerrit.tools.internal.gps.dialogs;
 
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.dialogs.ProgressMonitorDialog;
+import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.jface.layout.TreeColumnLayout;
 import org.eclipse.jface.viewers.BaseLabelProvider;
 import org.eclipse.jface.viewers.CellEditor;
@@ -25,31 +37,45 @@ import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.TreeViewerColumn;
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.FileDialog;
 import org.eclipse.swt.widgets.Group;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Text;
 import org.eclipse.swt.widgets.TreeColumn;
 
 import com.genuitec.eclipse.gerrit.tools.GerritToolsPlugin;
 import com.genuitec.eclipse.gerrit.tools.dialogs.SettingsDialog;
 import com.genuitec.eclipse.gerrit.tools.internal.gps.model.GpsFile;
 import com.genuitec.eclipse.gerrit.tools.internal.gps.model.GpsGitRepositoriesConfig;
+import com.genuitec.eclipse.gerrit.tools.internal.gps.model.GpsImportPlan;
 import com.genuitec.eclipse.gerrit.tools.internal.gps.model.IGpsRepositoriesConfig;
 import com.genuitec.eclipse.gerrit.tools.internal.gps.model.IGpsRepositorySetup;
 import com.genuitec.eclipse.gerrit.tools.internal.gps.model.IGpsRepositorySetup.State;
+import com.genuitec.eclipse.gerrit.tools.utils.ParallelTaskRunner;
 
 public class ImportProjectsDialog extends SettingsDialog {
 
     Map<String, Object> settings = new HashMap<String, Object>();
     GpsFile gpsFile;
+    GpsImportPlan plan;
+    Text planText;
     
-    public ImportProjectsDialog(Shell parentShell, GpsFile gpsFile) {
+    /**
+     * @param plan plan to fill in, steps are planned by the dialog according to chosen
+     * 		options and transfers are estimated on user's request
+     */
+    public ImportProjectsDialog(Shell parentShell, GpsFile gpsFile, GpsImportPlan plan) {
         super(parentShell,"Configure project import");
         this.gpsFile = gpsFile;
+        this.plan = plan;
     }
 
     @Override
@@ -63,6 +89,105 @@ public class ImportProjectsDialog extends SettingsDialog {
         
         //create repositories options
         createRepositoriesGroup(contents);
+        
+        //show what is going to be done
+        createPlanGroup(contents);
+        updatePlan();
+    }
+    
+    private void createPlanGroup(Composite parent) {
+    	Group group = new Group(parent, SWT.NONE);
+    	group.setText("Import plan");
+    	group.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+    	group.setLayout(new GridLayout());
+    	
+    	planText = new Text(group, SWT.MULTI | SWT.READ_ONLY | SWT.BORDER | SWT.V_SCROLL | SWT.H_SCROLL);
+    	GridData data = new GridData(SWT.FILL, SWT.FILL, true, true);
+    	data.heightHint = 150;
+    	data.widthHint = 350;
+    	planText.setLayoutData(data);
+    	
+    	Composite buttons = new Composite(group, SWT.NONE);
+    	buttons.setLayoutData(new GridData(SWT.RIGHT, SWT.CENTER, false, false));
+    	buttons.setLayout(new GridLayout(2, true));
+    	
+    	Button estimate = new Button(buttons, SWT.PUSH);
+    	estimate.setText("Estimate Transfers");
+    	estimate.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+    	estimate.addSelectionListener(new SelectionAdapter() {
+    		@Override
+    		public void widgetSelected(SelectionEvent e) {
+    			estimateTransfers();
+    		}
+		});
+    	
+    	Button export = new Button(buttons, SWT.PUSH);
+    	export.setText("Export Report...");
+    	export.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+    	export.addSelectionListener(new SelectionAdapter() {
+    		@Override
+    		public void widgetSelected(SelectionEvent e) {
+    			exportReport();
+    		}
+		});
+    }
+    
+    private void estimateTransfers() {
+    	final Map<String, Object> options = new HashMap<String, Object>(getSettings());
+    	try {
+    		new ProgressMonitorDialog(getShell()).run(true, true, new IRunnableWithProgress() {
+    			public void run(IProgressMonitor monitor) {
+    				SubMonitor progress = SubMonitor.convert(monitor, "Contacting remote repositories...", 
+    						gpsFile.getRepositoryConfigs().size());
+    				for (IGpsRepositoriesConfig config: gpsFile.getRepositoryConfigs()) {
+    					config.estimateTransfers(plan, options, progress.newChild(1));
+    				}
+    			}
+    		});
+    	} catch (InterruptedException e) {
+    		//show estimates gathered so far
+    	} catch (InvocationTargetException e) {
+    		GerritToolsPlugin.getDefault().log(e.getTargetException());
+    	}
+    	updatePlan();
+    }
+    
+    @Override
+    protected void settingChanged(String property) {
+    	if (!property.equals(GpsGitRepositoriesConfig.PROP_PARALLELISM)) {
+    		updatePlan();
+    	}
+    }
+    
+    private void updatePlan() {
+    	plan.clearRepositories();
+    	for (IGpsRepositoriesConfig config: gpsFile.getRepositoryConfigs()) {
+    		config.planConfiguration(plan, getSettings());
+    	}
+    	plan.planProjects(gpsFile.getProjects());
+    	planText.setText(plan.toReport());
+    }
+    
+    private void exportReport() {
+    	FileDialog fd = new FileDialog(getShell(), SWT.SAVE);
+    	fd.setText("Export import plan");
+    	fd.setFilterExtensions(new String[] { "*.txt" }); //$NON-NLS-1$
+    	fd.setOverwrite(true);
+    	String fileName = fd.open();
+    	if (fileName == null) {
+    		return;
+    	}
+    	try {
+    		Writer writer = new OutputStreamWriter(new FileOutputStream(fileName, false), "UTF-8"); //$NON-NLS-1$
+    		try {
+    			writer.write(plan.toReport());
+    		} finally {
+    			writer.close();
+    		}
+    	} catch (IOException e) {
+    		GerritToolsPlugin.getDefault().log(e);
+    		MessageDialog.openError(getShell(), "Export import plan", e.getLocalizedMessage());
+    	}
     }
 
     private void createGitOptionsGroup(Composite parent) {
@@ -86,6 +211,33 @@ public class ImportProjectsDialog extends SettingsDialog {
         createOptionCheckBox(group,
             "Force checkout (WARNING: this will override any non committed changes in problematic repositories)",
             GpsGitRepositoriesConfig.PROP_FORCE_CHECKOUT, false);
+        createOptionCheckBox(group, "Clone only the configured branch of new repositories",
+            GpsGitRepositoriesConfig.PROP_CLONE_SINGLE_BRANCH, false);
+        createOptionCheckBox(group, "Do not clone submodules of new repositories",
+            GpsGitRepositoriesConfig.PROP_CLONE_SKIP_SUBMODULES, false);
+        
+        Text parallelism = createOptionTextEditor(group, "Repositories prepared in parallel:",
+            GpsGitRepositoriesConfig.PROP_PARALLELISM, 
+            Integer.toString(ParallelTaskRunner.DEFAULT_PARALLELISM), 0);
+        GridData parallelismData = (GridData) parallelism.getLayoutData();
+        parallelismData.horizontalAlignment = SWT.LEFT;
+        parallelismData.horizontalSpan = 3;
+        parallelismData.widthHint = 40;
+    }
+    
+    @Override
+    protected IStatus validate(String property, Object value) {
+    	if (property.equals(GpsGitRepositoriesConfig.PROP_PARALLELISM)) {
+    		try {
+    			if (Integer.parseInt(((String) value).trim()) > 0) {
+    				return Status.OK_STATUS;
+    			}
+    		} catch (NumberFormatException e) {
+    			//report error below
+    		}
+    		return createErrorStatus("Number of repositories prepared in parallel must be a positive integer");
+    	}
+    	return super.validate(property, value);
     }
     
     private void createRepositoriesGroup(Composite parent) {
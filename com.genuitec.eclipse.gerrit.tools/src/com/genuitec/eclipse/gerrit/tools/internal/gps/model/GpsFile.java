@@ -12,6 +12,8 @@ package com.genuitec.eclipse.gerrit.tools.internal.gps.model;
 
 import static com.genuitec.eclipse.gerrit.tools.utils.XMLUtils.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -25,6 +27,10 @@ import java.util.TreeMap;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
@@ -50,52 +56,123 @@ public class GpsFile {
 	Map<String, IGpsRepositoriesConfig> configs = new TreeMap<String, IGpsRepositoriesConfig>();
 	
 	/**
-	 * Load data from the stream and closes it.
+	 * Load data from the stream and closes it. The file is read with a streaming
+	 * parser and only a single project or repositories configuration is kept in
+	 * memory as DOM at a time.
 	 * @param stream
 	 * @throws GpsFileException
 	 */
 	public void loadFromStream(InputStream stream) throws GpsFileException {
-		Document document = null;
+		XMLStreamReader reader = null;
 		try {
-			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder builder = factory.newDocumentBuilder();
-			document = builder.parse(stream);
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+			factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+			reader = factory.createXMLStreamReader(stream);
+			Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
 			projects.clear();
-			boolean rootFound = false;
-			for (Element el: getChildElements(document.getChildNodes())) {
-				if (el.getNodeName().equals(ELEM_ROOT)) {
-					if (rootFound) {
-						throw new GpsFileException("Only one {0} element allowed", ELEM_ROOT);
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+					if (!reader.getLocalName().equals(ELEM_ROOT)) {
+						throw new GpsFileException("Unsupported element {0}. Only {1} can be a root element.", reader.getLocalName(), ELEM_ROOT);
 					}
-					readContents(el);
-					rootFound = true;
-				} else {
-					throw new GpsFileException("Unsupported element {0}. Only {1} can be a root element.", el.getNodeName(), ELEM_ROOT);
+					readContents(reader, document);
 				}
 			}
 		} catch (GpsFileException e) {
 			throw e;
 		} catch (Exception e) {
 			throw new GpsFileException("Error reading GPS file. See error log for details.", e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					//ignore
+				}
+			}
+			try {
+				stream.close();
+			} catch (IOException e) {
+				//ignore
+			}
 		}
 	}
 	
-	private void readContents(Element element) throws XmlException, GpsFileException {
-		for (Element el: getChildElements(element.getChildNodes())) {
-			if (el.getNodeName().equals(ELEM_PROJECT)) {
-				projects.add(new GpsProject(el));
-			} else if (el.getNodeName().equals(ELEM_REPOSITORIES_CONFIG)) {
-				String type = el.getAttribute(ATTR_TYPE);
-				if (type == null) {
-					reportMissingAttribute(el, ATTR_TYPE);
-				}
-				if (configs.get(type) != null) {
-					throw new GpsFileException("Duplicated configuration element for repository of type {0}", type);
-				}
-				configs.put(type, GpsRepositoryFactory.createRepositoryConfig(el, type));
-			} else {
-				reportUnsupportedElement(element, el);
+	private void readContents(XMLStreamReader reader, Document document) throws XMLStreamException, XmlException, GpsFileException {
+		Element root = document.createElement(ELEM_ROOT);
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				return;
+			} else if (event != XMLStreamConstants.START_ELEMENT) {
+				continue;
+			}
+			readFragment(root, readElement(reader, document));
+		}
+	}
+	
+	private void readFragment(Element root, Element el) throws XmlException, GpsFileException {
+		if (el.getNodeName().equals(ELEM_PROJECT)) {
+			projects.add(new GpsProject(el));
+		} else if (el.getNodeName().equals(ELEM_REPOSITORIES_CONFIG)) {
+			String type = el.getAttribute(ATTR_TYPE);
+			if (type == null) {
+				reportMissingAttribute(el, ATTR_TYPE);
+			}
+			if (configs.get(type) != null) {
+				throw new GpsFileException("Duplicated configuration element for repository of type {0}", type);
+			}
+			configs.put(type, GpsRepositoryFactory.createRepositoryConfig(el, type));
+		} else {
+			reportUnsupportedElement(root, el);
+		}
+	}
+	
+	/**
+	 * Loads data stored with {@link #saveToCache(DataOutput)}, without parsing XML.
+	 * @param in
+	 * @throws GpsFileException
+	 */
+	public void loadFromCache(DataInput in) throws GpsFileException {
+		try {
+			Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+			Element root = document.createElement(ELEM_ROOT);
+			projects.clear();
+			configs.clear();
+			for (int i = in.readInt(); i > 0; i--) {
+				readFragment(root, readBinaryElement(in, document));
+			}
+		} catch (GpsFileException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new GpsFileException("Error reading cached GPS file. See error log for details.", e);
+		}
+	}
+	
+	/**
+	 * Stores loaded data in a binary form. Unlike {@link #saveToStream(OutputStream)},
+	 * repositories configuration is stored as loaded and projects keep their order.
+	 * @param out
+	 * @throws GpsFileException
+	 */
+	public void saveToCache(DataOutput out) throws GpsFileException {
+		try {
+			Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+			out.writeInt(configs.size() + projects.size());
+			for (IGpsRepositoriesConfig config: configs.values()) {
+				Element prjElement = document.createElement(ELEM_REPOSITORIES_CONFIG);
+				prjElement.setAttribute(ATTR_TYPE, config.getType());
+				config.serialize(prjElement);
+				writeBinaryElement(out, prjElement);
 			}
+			for (GpsProject project: projects) {
+				Element prjElement = document.createElement(ELEM_PROJECT);
+				project.serialize(prjElement);
+				writeBinaryElement(out, prjElement);
+			}
+		} catch (Exception e) {
+			throw new GpsFileException("Error caching GPS file. See error log for details.", e);
 		}
 	}
 	
@@ -15,31 +15,49 @@ import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URISyntaxException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.TreeMap;
 
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.SubProgressMonitor;
 import org.eclipse.egit.core.op.CloneOperation;
 import org.eclipse.egit.ui.internal.credentials.EGitCredentialsProvider;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.PullResult;
 import org.eclipse.jgit.api.CreateBranchCommand.SetupUpstreamMode;
 import org.eclipse.jgit.api.ResetCommand.ResetType;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectIdRef;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.FetchResult;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.URIish;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import com.genuitec.eclipse.gerrit.tools.GerritToolsPlugin;
+import com.genuitec.eclipse.gerrit.tools.internal.gps.model.GpsImportPlan.RepositoryStep;
+import com.genuitec.eclipse.gerrit.tools.utils.ParallelTaskRunner;
 import com.genuitec.eclipse.gerrit.tools.utils.RepositoryUtils;
+import com.genuitec.eclipse.gerrit.tools.utils.TransportPolicy;
 import com.genuitec.eclipse.gerrit.tools.utils.XMLUtils;
 import com.genuitec.eclipse.gerrit.tools.utils.XmlException;
 
@@ -50,12 +68,22 @@ public class GpsGitRepositoriesConfig implements IGpsRepositoriesConfig {
     public static final String PROP_RECONFIGURE_BRANCH = "reconfigure.branch"; //$NON-NLS-1$
     public static final String PROP_FORCE_CHECKOUT = "force.checkout"; //$NON-NLS-1$
     public static final String PROP_AUTO_PULL = "auto.pull"; //$NON-NLS-1$
+    public static final String PROP_PARALLELISM = "parallelism"; //$NON-NLS-1$
+    public static final String PROP_CLONE_SINGLE_BRANCH = "clone.single.branch"; //$NON-NLS-1$
+    public static final String PROP_CLONE_SKIP_SUBMODULES = "clone.skip.submodules"; //$NON-NLS-1$
     
 	private static final String ELEM_REPOSITORY = "repository"; //$NON-NLS-1$
 	
 	private static final String ATTR_NAME = "name"; //$NON-NLS-1$
 	private static final String ATTR_BRANCH = "branch"; //$NON-NLS-1$
 	private static final String ATTR_URL = "url"; //$NON-NLS-1$
+	private static final String ATTR_SINGLE_BRANCH = "single-branch"; //$NON-NLS-1$
+	private static final String ATTR_SUBMODULES = "submodules"; //$NON-NLS-1$
+	
+	/**
+	 * Timeout in seconds of listing remote refs to estimate transfers.
+	 */
+	private static final int ESTIMATE_TIMEOUT = 10;
 	
 	
 	private Map<String, RepoSetup> repo2branch = new TreeMap<String, RepoSetup>();
@@ -130,70 +158,169 @@ public class GpsGitRepositoriesConfig implements IGpsRepositoriesConfig {
 		}
 	}
 
-	public void performConfiguration(Map<String, Object> options, SubMonitor monitor) throws CoreException {
-		monitor.beginTask("", repo2branch.size()*2);
-		for (Entry<String, RepoSetup> entry: repo2branch.entrySet()) {
-            if (monitor.isCanceled()) return;
-            
-            RepoSetup repo = entry.getValue();
-            
-			String repositoryName = repo.name;
-			String repositoryBranch = repo.branch;
-			boolean localBranch = repositoryBranch.startsWith("refs/heads/"); //$NON-NLS-1$
-			String branchName = null;
-			if (localBranch) {
-			    branchName = repositoryBranch.substring(11);
+	public void planConfiguration(GpsImportPlan plan, Map<String, Object> options) {
+		for (RepoSetup repo: repo2branch.values()) {
+			plan.addRepository(repo.name, repo.planSteps(options));
+		}
+	}
+
+	public void estimateTransfers(final GpsImportPlan plan, Map<String, Object> options, IProgressMonitor monitor) {
+		List<ParallelTaskRunner.ITask> tasks = new ArrayList<ParallelTaskRunner.ITask>();
+		for (final RepoSetup repo: repo2branch.values()) {
+			if (repo.state == State.NOT_FOUND) {
+				continue;
 			}
-			switch (repo.state) {
-				case LOCATED:
-					org.eclipse.egit.ui.Activator.getDefault().getRepositoryUtil().addConfiguredRepository(
-							new File(repo.location, ".git")); //$NON-NLS-1$
-					break;
-				case CLONE:
-					monitor.setTaskName("Cloning repository " + repositoryName);
-					monitor.subTask("");
+			tasks.add(new ParallelTaskRunner.ITask() {
+				public String getName() {
+					return repo.name;
+				}
+				public IStatus run(SubMonitor monitor) throws CoreException {
 					try {
-						URIish uri = new URIish(repo.url);
-						if (repo.userName != null) {
-							uri = uri.setUser(repo.userName);
-						} else {
-							uri = uri.setUser(null);
-						}
-						CloneOperation co = new CloneOperation(uri, true, null, 
-								repo.location, repositoryBranch, "origin", 5000); //$NON-NLS-1$
-						co.setCredentialsProvider(new EGitCredentialsProvider());
-						co.setCloneSubmodules(true);
-						co.run(new SubProgressMonitor(monitor, 0, SubProgressMonitor.PREPEND_MAIN_LABEL_TO_SUBTASK));
-						
-						org.eclipse.egit.ui.Activator.getDefault().getRepositoryUtil().addConfiguredRepository(
-								co.getGitDir());
-				        
-						break;
-					} catch (Throwable e) {
-						if (e instanceof InvocationTargetException) {
-							e = e.getCause();
-						}
-						throw new CoreException(new Status(IStatus.ERROR, GerritToolsPlugin.PLUGIN_ID, 
-								(e instanceof InterruptedException) ? "Operation cancelled" : e.getMessage(), e));
+						plan.setTransfer(repo.name, repo.estimateTransfer(monitor));
+					} catch (OperationCanceledException e) {
+						throw e;
+					} catch (Exception e) {
+						plan.setTransfer(repo.name, new GpsImportPlan.Transfer(e.getLocalizedMessage()));
 					}
-				default:
+					return null;
+				}
+			});
+		}
+		try {
+			ParallelTaskRunner.run("Problems occurred while contacting remote repositories", 
+					tasks, getParallelism(options), monitor, 1);
+		} catch (OperationCanceledException e) {
+			//keep the estimates gathered so far
+		}
+	}
+
+	public void performConfiguration(GpsImportPlan plan, Map<String, Object> options, SubMonitor monitor) throws CoreException {
+		List<RepoSetupTask> tasks = new ArrayList<RepoSetupTask>();
+		for (RepoSetup repo: repo2branch.values()) {
+			if (!plan.getRepositorySteps(repo.name).isEmpty()) {
+				tasks.add(new RepoSetupTask(repo, plan, options));
 			}
-			
-			monitor.setTaskName("Preparing repository " + repositoryName);
-			
-			Repository repository = RepositoryUtils.getRepositoryForName(repositoryName);
-			if (repository == null ) {
-				throw new CoreException(new Status(IStatus.ERROR, GerritToolsPlugin.PLUGIN_ID, MessageFormat.format(
-						"Cannot continue. A required git repository named {0} is not configured.",
-						repositoryName)));
+		}
+		MultiStatus result;
+		try {
+			result = ParallelTaskRunner.run("Problems occurred while preparing git repositories", 
+					tasks, getParallelism(options), monitor, 2);
+		} catch (OperationCanceledException e) {
+			return;
+		}
+		if (result.getSeverity() >= IStatus.ERROR) {
+			throw new CoreException(result);
+		}
+	}
+	
+	private static void fetchOrigin(String repositoryName, final Repository repository, 
+			IProgressMonitor monitor) throws Exception {
+		TransportPolicy.execute("Fetch of " + repositoryName, //$NON-NLS-1$
+				TransportPolicy.getTimeout(repository, "origin"), monitor, //$NON-NLS-1$
+				new TransportPolicy.ITransportOperation<FetchResult>() {
+					public FetchResult run(int timeout) throws Exception {
+						return new Git(repository).fetch().setRemote("origin").setTimeout(timeout).call(); //$NON-NLS-1$
+					}
+				});
+	}
+	
+	static int getParallelism(Map<String, Object> options) {
+		Object value = options.get(PROP_PARALLELISM);
+		try {
+			if (value instanceof Number) {
+				return Math.max(1, ((Number) value).intValue());
+			} else if (value instanceof String) {
+				return Math.max(1, Integer.parseInt(((String) value).trim()));
 			}
-			
-			monitor.subTask(MessageFormat.format("Checking out branch \"{0}\" of git repository \"{1}\"",
-					repositoryBranch, repositoryName));
-			
-			if (repositoryBranch != null && repositoryBranch.length() > 0) {
-                //checkout the branch
-			    boolean newBranch = false;
+		} catch (NumberFormatException e) {
+			//use default
+		}
+		return ParallelTaskRunner.DEFAULT_PARALLELISM;
+	}
+	
+	private void configureRepository(final RepoSetup repo, GpsImportPlan plan, Map<String, Object> options, 
+			SubMonitor monitor) throws CoreException {
+		Set<RepositoryStep> steps = plan.getRepositorySteps(repo.name);
+		String repositoryName = repo.name;
+		final String repositoryBranch = repo.branch;
+		boolean localBranch = repositoryBranch.startsWith("refs/heads/"); //$NON-NLS-1$
+		String branchName = null;
+		if (localBranch) {
+		    branchName = repositoryBranch.substring(11);
+		}
+		switch (repo.state) {
+			case LOCATED:
+				org.eclipse.egit.ui.Activator.getDefault().getRepositoryUtil().addConfiguredRepository(
+						new File(repo.location, ".git")); //$NON-NLS-1$
+				break;
+			case CLONE:
+				monitor.subTask("Cloning repository");
+				try {
+					URIish uri = new URIish(repo.url);
+					if (repo.userName != null) {
+						uri = uri.setUser(repo.userName);
+					} else {
+						uri = uri.setUser(null);
+					}
+					final URIish cloneUri = uri;
+					//options of the repository take precedence over global options
+					final Collection<Ref> selectedBranches;
+					if (localBranch && (repo.singleBranch != null ? repo.singleBranch : 
+							Boolean.TRUE.equals(options.get(PROP_CLONE_SINGLE_BRANCH)))) {
+						selectedBranches = Collections.<Ref>singletonList(
+								new ObjectIdRef.Unpeeled(Ref.Storage.NETWORK, repositoryBranch, null));
+					} else {
+						selectedBranches = null;
+					}
+					final boolean cloneSubmodules = repo.submodules != null ? repo.submodules :
+							!Boolean.TRUE.equals(options.get(PROP_CLONE_SKIP_SUBMODULES));
+					final IProgressMonitor cloneMonitor = 
+							new SubProgressMonitor(monitor, 1, SubProgressMonitor.PREPEND_MAIN_LABEL_TO_SUBTASK);
+					CloneOperation co = TransportPolicy.execute("Clone of " + repositoryName, //$NON-NLS-1$
+							TransportPolicy.getTimeout(uri), cloneMonitor, 
+							new TransportPolicy.ITransportOperation<CloneOperation>() {
+								public CloneOperation run(int timeout) throws Exception {
+									//failed clone removes the partially cloned repository
+									CloneOperation co = new CloneOperation(cloneUri, selectedBranches == null, 
+											selectedBranches, repo.location, repositoryBranch, "origin", timeout); //$NON-NLS-1$
+									co.setCredentialsProvider(new EGitCredentialsProvider());
+									co.setCloneSubmodules(cloneSubmodules);
+									co.run(cloneMonitor);
+									return co;
+								}
+							});
+					
+					org.eclipse.egit.ui.Activator.getDefault().getRepositoryUtil().addConfiguredRepository(
+							co.getGitDir());
+			        
+					break;
+				} catch (Throwable e) {
+					if (e instanceof InvocationTargetException) {
+						e = e.getCause();
+					}
+					throw new CoreException(new Status(IStatus.ERROR, GerritToolsPlugin.PLUGIN_ID, 
+							(e instanceof InterruptedException || e instanceof OperationCanceledException) ? 
+									"Operation cancelled" : e.getMessage(), e));
+				}
+			default:
+		}
+		
+		monitor.subTask("Preparing repository");
+		
+		Repository repository = RepositoryUtils.getRepositoryForName(repositoryName);
+		if (repository == null ) {
+			throw new CoreException(new Status(IStatus.ERROR, GerritToolsPlugin.PLUGIN_ID, MessageFormat.format(
+					"Cannot continue. A required git repository named {0} is not configured.",
+					repositoryName)));
+		}
+		
+		monitor.subTask(MessageFormat.format("Checking out branch \"{0}\" of git repository \"{1}\"",
+				repositoryBranch, repositoryName));
+		
+		if (repositoryBranch != null && repositoryBranch.length() > 0) {
+            //checkout the branch
+		    boolean newBranch = false;
+			if (steps.contains(RepositoryStep.CHECKOUT)) {
 				try {
 				    Ref ref = repository.findRef(repositoryBranch);
 				    if (localBranch && ref == null) {
@@ -201,7 +328,7 @@ public class GpsGitRepositoriesConfig implements IGpsRepositoriesConfig {
 				        ref = repository.findRef(originBranch);
 				        if (ref == null) {
 			                try {
-			                    new Git(repository).fetch().setRemote("origin").call(); //$NON-NLS-1$
+			                    fetchOrigin(repositoryName, repository, monitor);
 			                } catch (Exception e) {
 			                    throw new CoreException(new Status(IStatus.ERROR, GerritToolsPlugin.PLUGIN_ID, 
 			                        MessageFormat.format("Cannot fetch from remote 'origin' of repository \"{0}\":\n{1}",
@@ -209,12 +336,12 @@ public class GpsGitRepositoriesConfig implements IGpsRepositoriesConfig {
 			                                e)));
 			                }
 				        }
-                        ref = repository.findRef(originBranch);
-                        if (ref == null) {
-                            throw new CoreException(new Status(IStatus.ERROR, GerritToolsPlugin.PLUGIN_ID, 
-                                MessageFormat.format("Cannot find branch \"{1}\" in repository \"{0}\".",
-                                        repositoryName, originBranch)));
-                        }
+	                    ref = repository.findRef(originBranch);
+	                    if (ref == null) {
+	                        throw new CoreException(new Status(IStatus.ERROR, GerritToolsPlugin.PLUGIN_ID, 
+	                            MessageFormat.format("Cannot find branch \"{1}\" in repository \"{0}\".",
+	                                    repositoryName, originBranch)));
+	                    }
 				        //we need to create the local branch based on remote branch
 				        new Git(repository).branchCreate().
 				            setName(branchName).
@@ -224,11 +351,11 @@ public class GpsGitRepositoriesConfig implements IGpsRepositoriesConfig {
 				        newBranch = true;
 				    }
 		            if (monitor.isCanceled()) return;
-                    
+	                
 					try {
-    				    new Git(repository).checkout().
-    					        setName(repositoryBranch).
-    					        call();
+					    new Git(repository).checkout().
+						        setName(repositoryBranch).
+						        call();
 					} catch (Exception e) {
 					    if (options.containsKey(PROP_FORCE_CHECKOUT) && (Boolean)options.get(PROP_FORCE_CHECKOUT)) {
 					        //try to reset
@@ -259,49 +386,79 @@ public class GpsGitRepositoriesConfig implements IGpsRepositoriesConfig {
 									repositoryName, repositoryBranch, e.getMessage(), 
 									e)));
 				}
-	            if (monitor.isCanceled()) return;
-				
-				if (localBranch) {
-	                monitor.subTask(MessageFormat.format("Configuring branch \"{0}\" of git repository \"{1}\"",
-	                    repositoryBranch, repositoryName));
-    				try {
-    	                StoredConfig config = repository.getConfig();
-    	                
-    	                if (options.get(PROP_CONFIGURE_PUSH_TO_UPSTREAM) != null && (Boolean)options.get(PROP_CONFIGURE_PUSH_TO_UPSTREAM)) {
-    	                    //configure push to upstream
-                            config.setString("remote", "origin", "push", repositoryBranch + ":refs/for/" + branchName); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
-    	                }
-    	                if (newBranch || (options.get(PROP_RECONFIGURE_BRANCH) != null && (Boolean)options.get(PROP_RECONFIGURE_BRANCH))) {
-                            config.setString("branch", branchName, "remote", "origin"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-                            config.setString("branch", branchName, "merge", repositoryBranch); //$NON-NLS-1$ //$NON-NLS-2$
-                            config.setString("branch", branchName, "rebase", "true"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-    	                }
-                        config.save();
-                    } catch (Exception e) {
-                        throw new CoreException(new Status(IStatus.ERROR, GerritToolsPlugin.PLUGIN_ID, 
-                            MessageFormat.format("Cannot configure branch \"{1}\" of repository \"{0}\":\n{2}",
-                                    repositoryName, repositoryBranch, e.getMessage(), 
-                                    e)));
-                    }
-				}
-	            if (monitor.isCanceled()) return;
-				
-				if (options.containsKey(PROP_AUTO_PULL) && (Boolean)options.get(PROP_AUTO_PULL)) {
-    				monitor.subTask(MessageFormat.format("Pulling branch \"{0}\" from git repository \"{1}\"",
-                        repositoryBranch, repositoryName));
-    				
-    				try {
-    				    new Git(repository).pull().call();
-    				} catch (Exception e) {
-                        throw new CoreException(new Status(IStatus.ERROR, GerritToolsPlugin.PLUGIN_ID, 
-                            MessageFormat.format("Cannot pull branch \"{1}\" of repository \"{0}\":\n{2}",
-                                    repositoryName, repositoryBranch, e.getMessage(), 
-                                    e)));
-                    }
-				}
 			}
+            if (monitor.isCanceled()) return;
+			
+			if (localBranch && (newBranch || steps.contains(RepositoryStep.CONFIGURE))) {
+                monitor.subTask(MessageFormat.format("Configuring branch \"{0}\" of git repository \"{1}\"",
+                    repositoryBranch, repositoryName));
+				try {
+	                StoredConfig config = repository.getConfig();
+	                
+	                if (options.get(PROP_CONFIGURE_PUSH_TO_UPSTREAM) != null && (Boolean)options.get(PROP_CONFIGURE_PUSH_TO_UPSTREAM)) {
+	                    //configure push to upstream
+                        config.setString("remote", "origin", "push", repositoryBranch + ":refs/for/" + branchName); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	                }
+	                if (newBranch || (options.get(PROP_RECONFIGURE_BRANCH) != null && (Boolean)options.get(PROP_RECONFIGURE_BRANCH))) {
+                        config.setString("branch", branchName, "remote", "origin"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                        config.setString("branch", branchName, "merge", repositoryBranch); //$NON-NLS-1$ //$NON-NLS-2$
+                        config.setString("branch", branchName, "rebase", "true"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	                }
+                    config.save();
+                } catch (Exception e) {
+                    throw new CoreException(new Status(IStatus.ERROR, GerritToolsPlugin.PLUGIN_ID, 
+                        MessageFormat.format("Cannot configure branch \"{1}\" of repository \"{0}\":\n{2}",
+                                repositoryName, repositoryBranch, e.getMessage(), 
+                                e)));
+                }
+			}
+            if (monitor.isCanceled()) return;
 			
-			monitor.worked(1);
+			if (steps.contains(RepositoryStep.PULL)) {
+				monitor.subTask(MessageFormat.format("Pulling branch \"{0}\" from git repository \"{1}\"",
+                    repositoryBranch, repositoryName));
+				
+				try {
+				    final Repository pullRepository = repository;
+				    TransportPolicy.execute("Pull of " + repositoryName, //$NON-NLS-1$
+				    		TransportPolicy.getTimeout(repository, "origin"), monitor, //$NON-NLS-1$
+				    		new TransportPolicy.ITransportOperation<PullResult>() {
+				    			public PullResult run(int timeout) throws Exception {
+				    				return new Git(pullRepository).pull().setTimeout(timeout).call();
+				    			}
+				    		});
+				    plan.pullCompleted(repositoryName);
+				} catch (Exception e) {
+                    throw new CoreException(new Status(IStatus.ERROR, GerritToolsPlugin.PLUGIN_ID, 
+                        MessageFormat.format("Cannot pull branch \"{1}\" of repository \"{0}\":\n{2}",
+                                repositoryName, repositoryBranch, e.getMessage(), 
+                                e)));
+                }
+			}
+		}
+		
+		monitor.worked(1);
+	}
+	
+	private class RepoSetupTask implements ParallelTaskRunner.ITask {
+		
+		private final RepoSetup repo;
+		private final GpsImportPlan plan;
+		private final Map<String, Object> options;
+		
+		public RepoSetupTask(RepoSetup repo, GpsImportPlan plan, Map<String, Object> options) {
+			this.repo = repo;
+			this.plan = plan;
+			this.options = options;
+		}
+		
+		public String getName() {
+			return repo.name;
+		}
+		
+		public IStatus run(SubMonitor monitor) throws CoreException {
+			configureRepository(repo, plan, options, monitor);
+			return null;
 		}
 		
 	}
@@ -318,6 +475,10 @@ public class GpsGitRepositoriesConfig implements IGpsRepositoriesConfig {
 		public final String name;
 		public final String branch;
 		public final String url;
+		/** Whether only the configured branch should be cloned, <code>null</code> if not specified */
+		public final Boolean singleBranch;
+		/** Whether submodules should be cloned, <code>null</code> if not specified */
+		public final Boolean submodules;
 		
 		private State state;
 		private String userName;
@@ -329,6 +490,8 @@ public class GpsGitRepositoriesConfig implements IGpsRepositoriesConfig {
 			this.name = name;
 			this.branch = branch;
 			this.url = url;
+			this.singleBranch = null;
+			this.submodules = null;
 		}
 		
 		public RepoSetup(Element repositoryEl) throws XmlException {
@@ -344,6 +507,8 @@ public class GpsGitRepositoriesConfig implements IGpsRepositoriesConfig {
 			if (url == null || url.length() == 0) {
 				XMLUtils.reportMissingAttribute(repositoryEl, ATTR_URL);
 			}
+			this.singleBranch = getBooleanAttribute(repositoryEl, ATTR_SINGLE_BRANCH);
+			this.submodules = getBooleanAttribute(repositoryEl, ATTR_SUBMODULES);
 			determineState();
 		}
 		
@@ -353,6 +518,174 @@ public class GpsGitRepositoriesConfig implements IGpsRepositoriesConfig {
 			if (url != null) {
 				repositoryEl.setAttribute(ATTR_URL, url);
 			}
+			if (singleBranch != null) {
+				repositoryEl.setAttribute(ATTR_SINGLE_BRANCH, singleBranch.toString());
+			}
+			if (submodules != null) {
+				repositoryEl.setAttribute(ATTR_SUBMODULES, submodules.toString());
+			}
+		}
+		
+		private static Boolean getBooleanAttribute(Element el, String name) {
+			String value = el.getAttribute(name);
+			if (value == null || value.length() == 0) {
+				return null;
+			}
+			return Boolean.valueOf(value.trim());
+		}
+		
+		/**
+		 * Compares the repository with the requested state.
+		 * @return steps needed to bring the repository to the requested state
+		 */
+		public Set<RepositoryStep> planSteps(Map<String, Object> options) {
+			Set<RepositoryStep> steps = EnumSet.noneOf(RepositoryStep.class);
+			boolean localBranch = branch.startsWith("refs/heads/"); //$NON-NLS-1$
+			switch (state) {
+				case CLONE:
+					//clone checks out the branch and sets up tracking
+					steps.add(RepositoryStep.CLONE);
+					if (localBranch && (isSet(options, PROP_CONFIGURE_PUSH_TO_UPSTREAM) 
+							|| isSet(options, PROP_RECONFIGURE_BRANCH))) {
+						steps.add(RepositoryStep.CONFIGURE);
+					}
+					return steps;
+				case NOT_FOUND:
+					//let the configuration report the missing repository
+					steps.add(RepositoryStep.CHECKOUT);
+					return steps;
+				case LOCATED:
+					steps.add(RepositoryStep.REGISTER);
+					break;
+				default:
+			}
+			Repository repository = null;
+			boolean close = false;
+			try {
+				if (state == State.PRESENT) {
+					repository = RepositoryUtils.getRepositoryForName(name);
+				} else {
+					repository = new FileRepositoryBuilder().setGitDir(new File(location, ".git")).build(); //$NON-NLS-1$
+					close = true;
+				}
+				Ref ref = repository.findRef(branch);
+				boolean emptyWorkTree = repository.getDirectory().getParentFile().list().length == 1;
+				if (ref == null || !branch.equals(repository.getFullBranch()) || emptyWorkTree) {
+					steps.add(RepositoryStep.CHECKOUT);
+					if (emptyWorkTree || isSet(options, PROP_FORCE_CHECKOUT)) {
+						steps.add(RepositoryStep.RESET);
+					}
+				}
+				if (ref == null && localBranch 
+						&& repository.findRef("refs/remotes/origin/" + branch.substring(11)) == null) { //$NON-NLS-1$
+					steps.add(RepositoryStep.FETCH);
+				}
+				if (localBranch && (ref == null || !isBranchConfigured(repository.getConfig(), options))) {
+					steps.add(RepositoryStep.CONFIGURE);
+				}
+			} catch (Exception e) {
+				//state cannot be verified, perform all steps
+				GerritToolsPlugin.getDefault().log(e);
+				steps.add(RepositoryStep.CHECKOUT);
+				steps.add(RepositoryStep.CONFIGURE);
+			} finally {
+				if (close && repository != null) {
+					repository.close();
+				}
+			}
+			if (isSet(options, PROP_AUTO_PULL)) {
+				steps.add(RepositoryStep.PULL);
+			}
+			return steps;
+		}
+		
+		/**
+		 * Lists refs advertised by the remote and compares them with the local repository.
+		 */
+		public GpsImportPlan.Transfer estimateTransfer(IProgressMonitor monitor) throws Exception {
+			Repository repository = null;
+			boolean close = false;
+			URIish uri = null;
+			try {
+				if (state == State.PRESENT) {
+					repository = RepositoryUtils.getRepositoryForName(name);
+				} else if (state == State.LOCATED) {
+					repository = new FileRepositoryBuilder().setGitDir(new File(location, ".git")).build(); //$NON-NLS-1$
+					close = true;
+				}
+				if (repository != null) {
+					List<URIish> uris = new RemoteConfig(repository.getConfig(), "origin").getURIs(); //$NON-NLS-1$
+					uri = uris.isEmpty() ? null : uris.get(0);
+				} else if (url != null) {
+					uri = new URIish(url).setUser(userName);
+				}
+				if (uri == null) {
+					return new GpsImportPlan.Transfer("no remote 'origin'");
+				}
+				final String remote = uri.toString();
+				//an estimate is not worth retries, so try once with a short timeout
+				int timeout = TransportPolicy.getTimeout(uri);
+				if (timeout > 0) {
+					timeout = Math.min(timeout, ESTIMATE_TIMEOUT);
+				}
+				Collection<Ref> refs = Git.lsRemoteRepository().setRemote(remote).setHeads(true).setTags(true)
+						.setTimeout(timeout).setCredentialsProvider(new EGitCredentialsProvider())
+						.call();
+				if (repository == null) {
+					//nothing is present locally, size is not advertised
+					return new GpsImportPlan.Transfer(refs.size(), refs.size(), -1, -1, false);
+				}
+				int missing = 0;
+				for (Ref ref: refs) {
+					if (ref.getObjectId() != null && !repository.getObjectDatabase().has(ref.getObjectId())) {
+						missing++;
+					}
+				}
+				if (missing == 0) {
+					return new GpsImportPlan.Transfer(refs.size(), 0, getPackSize(repository), 0, false);
+				}
+				//assume that missing refs carry a proportional share of the history
+				long packSize = getPackSize(repository);
+				return new GpsImportPlan.Transfer(refs.size(), missing, packSize, 
+						packSize > 0 ? packSize * missing / refs.size() : -1, true);
+			} finally {
+				if (close && repository != null) {
+					repository.close();
+				}
+			}
+		}
+		
+		private static long getPackSize(Repository repository) {
+			File[] packs = new File(repository.getDirectory(), "objects/pack").listFiles(); //$NON-NLS-1$
+			long size = 0;
+			if (packs != null) {
+				for (File pack: packs) {
+					if (pack.getName().endsWith(".pack")) { //$NON-NLS-1$
+						size += pack.length();
+					}
+				}
+			}
+			return size;
+		}
+		
+		private boolean isBranchConfigured(Config config, Map<String, Object> options) {
+			String branchName = branch.substring(11);
+			if (isSet(options, PROP_CONFIGURE_PUSH_TO_UPSTREAM) 
+					&& !Arrays.equals(config.getStringList("remote", "origin", "push"), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+							new String[] { branch + ":refs/for/" + branchName })) { //$NON-NLS-1$
+				return false;
+			}
+			if (isSet(options, PROP_RECONFIGURE_BRANCH) 
+					&& (!"origin".equals(config.getString("branch", branchName, "remote")) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+							|| !branch.equals(config.getString("branch", branchName, "merge")) //$NON-NLS-1$ //$NON-NLS-2$
+							|| !"true".equals(config.getString("branch", branchName, "rebase")))) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				return false;
+			}
+			return true;
+		}
+		
+		private static boolean isSet(Map<String, Object> options, String option) {
+			return Boolean.TRUE.equals(options.get(option));
 		}
 		
 		public void determineState() {
@@ -12,6 +12,7 @@ package com.genuitec.eclipse.gerrit.tools.internal.gps.model;
 
 import static com.genuitec.eclipse.gerrit.tools.utils.XMLUtils.*;
 
+import java.io.File;
 import java.text.MessageFormat;
 
 import org.eclipse.core.resources.IProject;
@@ -56,7 +57,7 @@ public class GpsGitRepositoryHandler implements IGpsRepositoryHandler {
 		repositoryPath = new Path(readTextContents(element).trim());
 	}
 	
-	private Repository getRepository() throws CoreException {
+	private synchronized Repository getRepository() throws CoreException {
 		if (repository == null) {
 			//acquire project's repository
 			repository = RepositoryUtils.getRepositoryForName(repositoryPath.segment(0));
@@ -79,12 +80,8 @@ public class GpsGitRepositoryHandler implements IGpsRepositoryHandler {
 	public IProject importProject(SubMonitor monitor) throws CoreException {
 		monitor.beginTask("", 3);
 		
-		IPath projectLocation = getProjectLocation();
-		
 		//create project
-		final IProjectDescription projectDescription = ResourcesPlugin.getWorkspace()
-				.loadProjectDescription(projectLocation
-						.append(IProjectDescription.DESCRIPTION_FILE_NAME));
+		final IProjectDescription projectDescription = loadProjectDescription();
 		final IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(parent.getName());
 		project.create(projectDescription, monitor.newChild(1));
 		if (monitor.isCanceled()) return null;
@@ -95,13 +92,29 @@ public class GpsGitRepositoryHandler implements IGpsRepositoryHandler {
 		
 		//connect the project with repository
 		final ConnectProviderOperation connectProviderOperation = new ConnectProviderOperation(
-				project, getRepository().getDirectory());
+				project, getRepositoryDirectory());
 		connectProviderOperation.execute(monitor.newChild(1));
 		if (monitor.isCanceled()) return null;
 		
 		return project;
 	}
 	
+	/**
+	 * Reads the <code>.project</code> file of the project from the repository. 
+	 * Can be called from any thread.
+	 */
+	public IProjectDescription loadProjectDescription() throws CoreException {
+		return ResourcesPlugin.getWorkspace().loadProjectDescription(getProjectLocation()
+				.append(IProjectDescription.DESCRIPTION_FILE_NAME));
+	}
+	
+	/**
+	 * @return git directory of the repository, which the project belongs to
+	 */
+	public File getRepositoryDirectory() throws CoreException {
+		return getRepository().getDirectory();
+	}
+	
 	public IPath getRepositoryPath() {
 		return repositoryPath;
 	}
@@ -114,6 +127,14 @@ public class GpsGitRepositoryHandler implements IGpsRepositoryHandler {
 		repoConf.setTextContent(repositoryPath.toString());
 	}
 
+	/**
+	 * @return <code>false</code> if the project is open, but not shared with a git repository
+	 */
+	public boolean isConnected() {
+		final IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(parent.getName());
+		return !project.isOpen() || RepositoryMapping.getMapping((IResource)project) != null;
+	}
+
 	@Override
 	public boolean requiresImport() throws CoreException {
 		final IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(parent.getName());
@@ -0,0 +1,151 @@
+/**
+ *  Copyright (c) 2015 Genuitec LLC.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Piotr Tomiak <piotr@genuitec.com> - initial API and implementation
+ */
+package com.genuitec.eclipse.gerrit.tools.internal.gps.model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.genuitec.eclipse.gerrit.tools.GerritToolsPlugin;
+
+/**
+ * Pull journal of an import of a GPS file. Records repositories as they are pulled,
+ * so that an import which has failed or has been cancelled does not pull them again
+ * when resumed. The journal is kept in the plugin state location and it is removed
+ * once the import finishes. A journal of a GPS file, which has been modified since,
+ * is discarded.
+ * <p>
+ * Other steps, like checking out a branch, creating a project or connecting it with
+ * its repository, can be verified and are planned again from the state of the workspace.
+ */
+public class GpsImportJournal {
+
+	private static final String JOURNAL_FOLDER = "gps-journal"; //$NON-NLS-1$
+	private static final String VERSION = "2"; //$NON-NLS-1$
+
+	private final File file;
+	private final String header;
+	private final Set<String> completed = new HashSet<String>();
+
+	/**
+	 * Opens the journal of the GPS file, reading pulls completed by a previous import.
+	 */
+	public static GpsImportJournal open(File gpsFile) {
+		GpsImportJournal journal = new GpsImportJournal(gpsFile);
+		journal.load();
+		return journal;
+	}
+
+	private GpsImportJournal(File gpsFile) {
+		String path = gpsFile.getAbsolutePath();
+		this.file = GerritToolsPlugin.getDefault().getStateLocation().append(JOURNAL_FOLDER)
+				.append(gpsFile.getName() + "_" + Integer.toHexString(path.hashCode()) + ".journal") //$NON-NLS-1$ //$NON-NLS-2$
+				.toFile();
+		this.header = join(VERSION, path, Long.toString(gpsFile.lastModified()), Long.toString(gpsFile.length()));
+	}
+
+	/**
+	 * @return <code>true</code> if there are pulls completed by a previous import
+	 */
+	public synchronized boolean isResumed() {
+		return !completed.isEmpty();
+	}
+
+	public synchronized boolean isPulled(String repository) {
+		return completed.contains(repository);
+	}
+
+	public void pulled(String repository) {
+		record(repository);
+	}
+
+	/**
+	 * Removes the journal after the import has finished.
+	 */
+	public synchronized void finish() {
+		completed.clear();
+		file.delete();
+	}
+
+	private synchronized void record(String entry) {
+		if (!completed.add(entry)) {
+			return;
+		}
+		try {
+			boolean exists = file.isFile();
+			if (!exists) {
+				file.getParentFile().mkdirs();
+			}
+			//append and close immediately, so that completed pulls survive a crash
+			Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"); //$NON-NLS-1$
+			try {
+				if (!exists) {
+					writer.write(header);
+					writer.write('\n');
+				}
+				writer.write(entry);
+				writer.write('\n');
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			GerritToolsPlugin.getDefault().log("Cannot write GPS import journal.", e);
+		}
+	}
+
+	private synchronized void load() {
+		if (!file.isFile()) {
+			return;
+		}
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8")); //$NON-NLS-1$
+			try {
+				if (!header.equals(reader.readLine())) {
+					//journal of a different version of the file
+					completed.clear();
+				} else {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						if (line.length() > 0) {
+							completed.add(line);
+						}
+					}
+					return;
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			GerritToolsPlugin.getDefault().log("Cannot read GPS import journal.", e);
+			completed.clear();
+		}
+		file.delete();
+	}
+
+	private static String join(String... parts) {
+		StringBuilder sb = new StringBuilder();
+		for (String part: parts) {
+			if (sb.length() > 0) {
+				sb.append('\t');
+			}
+			sb.append(part);
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,355 @@
+/**
+ *  Copyright (c) 2015 Genuitec LLC.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Piotr Tomiak <piotr@genuitec.com> - initial API and implementation
+ */
+package com.genuitec.eclipse.gerrit.tools.internal.gps.model;
+
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Difference between a GPS file and the current state of the workspace. Repository
+ * configurations record steps needed to bring every repository to the requested
+ * state, and {@link #planProjects(List)} records which projects need to be imported
+ * and which working sets they are missing. Import performs only the planned work.
+ */
+public class GpsImportPlan {
+
+	public enum RepositoryStep {
+		/** Add a repository found in the workspace folder to the configured repositories */
+		REGISTER,
+		CLONE,
+		/** Fetch from origin, because the branch to check out is not available locally */
+		FETCH,
+		/** Check out the branch, creating it from the remote branch if needed */
+		CHECKOUT,
+		/** Hard reset of the repository, if the working tree is empty or checkout is forced */
+		RESET,
+		/** Configure push to upstream and tracking of the branch */
+		CONFIGURE,
+		PULL
+	}
+
+	public enum ProjectAction {
+		NONE,
+		CREATE,
+		REPLACE,
+		/** Connect an existing project with its repository, e.g. after an interrupted import */
+		CONNECT
+	}
+
+	/**
+	 * Estimate of data transferred while cloning or fetching a repository. Ref
+	 * advertisement of the remote does not contain sizes of objects, so the
+	 * estimate is exact only if all advertised objects are already present locally.
+	 * Otherwise it is approximated from the size of local packs scaled by the share
+	 * of missing refs, and it is not known for repositories, which are not present.
+	 */
+	public static class Transfer {
+
+		/** Number of branches and tags advertised by the remote */
+		public final int advertisedRefs;
+		/** Number of advertised refs pointing to objects missing in the local repository */
+		public final int missingRefs;
+		/** Size of pack files of the local repository in bytes */
+		public final long localPackSize;
+		/** Estimated amount of transferred data in bytes, -1 if it cannot be estimated */
+		public final long estimatedSize;
+		/** <code>true</code> if the estimated size is only approximate */
+		public final boolean approximate;
+		/** Problem with accessing the remote, <code>null</code> if there was none */
+		public final String error;
+
+		public Transfer(int advertisedRefs, int missingRefs, long localPackSize, long estimatedSize,
+				boolean approximate) {
+			this.advertisedRefs = advertisedRefs;
+			this.missingRefs = missingRefs;
+			this.localPackSize = localPackSize;
+			this.estimatedSize = estimatedSize;
+			this.approximate = approximate;
+			this.error = null;
+		}
+
+		public Transfer(String error) {
+			this.advertisedRefs = -1;
+			this.missingRefs = -1;
+			this.localPackSize = -1;
+			this.estimatedSize = -1;
+			this.approximate = false;
+			this.error = error;
+		}
+
+	}
+
+	private final Map<String, Set<RepositoryStep>> repositories = new TreeMap<String, Set<RepositoryStep>>();
+	private final Map<String, Transfer> transfers = new ConcurrentHashMap<String, Transfer>();
+	private final Map<GpsProject, ProjectAction> projects = new LinkedHashMap<GpsProject, ProjectAction>();
+	private final Map<GpsProject, Set<String>> workingSets = new LinkedHashMap<GpsProject, Set<String>>();
+	private final Set<IProject> obsoleteProjects = new LinkedHashSet<IProject>();
+
+	private GpsImportJournal journal;
+
+	/**
+	 * Sets journal of the import. Pulls are recorded in the journal as they complete and
+	 * pulls, which have been completed by a previous import are not planned again.
+	 */
+	public void setJournal(GpsImportJournal journal) {
+		this.journal = journal;
+	}
+
+	public void addRepository(String name, Set<RepositoryStep> steps) {
+		Set<RepositoryStep> copy = EnumSet.noneOf(RepositoryStep.class);
+		copy.addAll(steps);
+		//pull cannot be verified, so rely on the journal unless the branch changes
+		if (journal != null && journal.isPulled(name)
+				&& !copy.contains(RepositoryStep.CLONE) && !copy.contains(RepositoryStep.CHECKOUT)) {
+			copy.remove(RepositoryStep.PULL);
+		}
+		repositories.put(name, Collections.unmodifiableSet(copy));
+	}
+
+	/**
+	 * Records completion of a pull in the journal, if there is one.
+	 */
+	public void pullCompleted(String repository) {
+		if (journal != null) {
+			journal.pulled(repository);
+		}
+	}
+
+	/**
+	 * @return names of all planned repositories, including those which need no changes
+	 */
+	public Set<String> getRepositories() {
+		return Collections.unmodifiableSet(repositories.keySet());
+	}
+
+	/**
+	 * @return steps needed to set up the repository, empty if the repository is up to date
+	 */
+	public Set<RepositoryStep> getRepositorySteps(String name) {
+		Set<RepositoryStep> steps = repositories.get(name);
+		return steps != null ? steps : Collections.<RepositoryStep>emptySet();
+	}
+
+	/**
+	 * Removes planned steps of repositories, keeping the transfer estimates.
+	 */
+	public void clearRepositories() {
+		repositories.clear();
+	}
+
+	public void setTransfer(String name, Transfer transfer) {
+		transfers.put(name, transfer);
+	}
+
+	/**
+	 * @return transfer estimate of the repository, <code>null</code> if it has not been estimated
+	 */
+	public Transfer getTransfer(String name) {
+		return transfers.get(name);
+	}
+
+	/**
+	 * Compares projects with the workspace. Should be called once the repositories
+	 * are set up, otherwise locations of projects from repositories which are not
+	 * configured yet cannot be verified and such projects are assumed to be replaced.
+	 */
+	public void planProjects(List<GpsProject> gpsProjects) {
+		Map<IProject, Set<String>> currentWorkingSets = GpsProject.getWorkingSetsIndex();
+		projects.clear();
+		workingSets.clear();
+		obsoleteProjects.clear();
+		for (IProject project: ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+			if (project.isAccessible()) {
+				obsoleteProjects.add(project);
+			}
+		}
+		for (GpsProject gpsProject: gpsProjects) {
+			IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(gpsProject.getName());
+			obsoleteProjects.remove(project);
+			ProjectAction action;
+			if (!project.exists()) {
+				action = ProjectAction.CREATE;
+			} else {
+				try {
+					IGpsRepositoryHandler handler = gpsProject.getRepositoryHandler();
+					if (handler.requiresImport()) {
+						action = ProjectAction.REPLACE;
+					} else if (handler instanceof GpsGitRepositoryHandler
+							&& !((GpsGitRepositoryHandler) handler).isConnected()) {
+						action = ProjectAction.CONNECT;
+					} else {
+						action = ProjectAction.NONE;
+					}
+				} catch (CoreException e) {
+					action = ProjectAction.REPLACE;
+				}
+			}
+			projects.put(gpsProject, action);
+
+			Set<String> missing = new TreeSet<String>(gpsProject.getWorkingSets());
+			Set<String> current = currentWorkingSets.get(project);
+			if (current != null && (action == ProjectAction.NONE || action == ProjectAction.CONNECT)) {
+				missing.removeAll(current);
+			}
+			if (!missing.isEmpty()) {
+				workingSets.put(gpsProject, missing);
+			}
+		}
+	}
+
+	public ProjectAction getProjectAction(GpsProject project) {
+		ProjectAction action = projects.get(project);
+		return action != null ? action : ProjectAction.NONE;
+	}
+
+	/**
+	 * @return working sets, to which the project needs to be added
+	 */
+	public Set<String> getMissingWorkingSets(GpsProject project) {
+		Set<String> result = workingSets.get(project);
+		return result != null ? result : Collections.<String>emptySet();
+	}
+
+	/**
+	 * @return open projects of the workspace, which are not part of the GPS file
+	 */
+	public Set<IProject> getObsoleteProjects() {
+		return Collections.unmodifiableSet(obsoleteProjects);
+	}
+
+	/**
+	 * @return human readable description of the plan
+	 */
+	public String toReport() {
+		StringBuilder sb = new StringBuilder();
+		Map<RepositoryStep, Integer> stepCounts = new EnumMap<RepositoryStep, Integer>(RepositoryStep.class);
+		long knownTransfer = 0;
+		boolean approximate = false;
+		int unknownTransfers = 0;
+		int notEstimated = 0;
+		for (Map.Entry<String, Set<RepositoryStep>> entry: repositories.entrySet()) {
+			for (RepositoryStep step: entry.getValue()) {
+				Integer count = stepCounts.get(step);
+				stepCounts.put(step, count == null ? 1 : count + 1);
+			}
+			if (isTransferring(entry.getValue())) {
+				Transfer transfer = transfers.get(entry.getKey());
+				if (transfer == null) {
+					notEstimated++;
+				} else if (transfer.estimatedSize >= 0) {
+					knownTransfer += transfer.estimatedSize;
+					approximate |= transfer.approximate;
+				} else {
+					unknownTransfers++;
+				}
+			}
+		}
+		Map<ProjectAction, Integer> actionCounts = new EnumMap<ProjectAction, Integer>(ProjectAction.class);
+		for (ProjectAction action: projects.values()) {
+			Integer count = actionCounts.get(action);
+			actionCounts.put(action, count == null ? 1 : count + 1);
+		}
+
+		sb.append(MessageFormat.format("Repositories: {0}", repositories.size())).append('\n'); 
+		for (RepositoryStep step: RepositoryStep.values()) {
+			if (stepCounts.containsKey(step)) {
+				sb.append(MessageFormat.format("  {0}: {1}", step.toString().toLowerCase(), stepCounts.get(step))).append('\n'); //$NON-NLS-1$
+			}
+		}
+		sb.append(MessageFormat.format("Estimated transfer: {0}{1}", approximate ? "~" : "", formatSize(knownTransfer))); //$NON-NLS-2$
+		if (unknownTransfers > 0) {
+			sb.append(MessageFormat.format(" + unknown amount from {0} repositories", unknownTransfers));
+		}
+		if (notEstimated > 0) {
+			sb.append(MessageFormat.format(" + {0} repositories not estimated", notEstimated));
+		}
+		sb.append('\n');
+		sb.append(MessageFormat.format("Projects: {0}", projects.size())).append('\n');
+		for (ProjectAction action: ProjectAction.values()) {
+			if (actionCounts.containsKey(action) && action != ProjectAction.NONE) {
+				sb.append(MessageFormat.format("  {0}: {1}", action.toString().toLowerCase(), actionCounts.get(action))).append('\n'); //$NON-NLS-1$
+			}
+		}
+		sb.append(MessageFormat.format("  delete (if confirmed): {0}", obsoleteProjects.size())).append('\n');
+
+		sb.append('\n').append("Repository details:").append('\n');
+		for (Map.Entry<String, Set<RepositoryStep>> entry: repositories.entrySet()) {
+			sb.append("  ").append(entry.getKey()).append(": "); //$NON-NLS-1$ //$NON-NLS-2$
+			sb.append(entry.getValue().isEmpty() ? "up to date" : entry.getValue().toString().toLowerCase());
+			Transfer transfer = transfers.get(entry.getKey());
+			if (transfer != null) {
+				if (transfer.error != null) {
+					sb.append(MessageFormat.format(" (remote not available: {0})", transfer.error));
+				} else {
+					sb.append(MessageFormat.format(" ({0} refs advertised, {1} missing locally, local packs {2}, transfer {3})",
+							transfer.advertisedRefs, transfer.missingRefs, 
+							transfer.localPackSize >= 0 ? formatSize(transfer.localPackSize) : "none",
+							transfer.estimatedSize < 0 ? "unknown" : 
+								(transfer.approximate ? "~" : "") + formatSize(transfer.estimatedSize))); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+			sb.append('\n');
+		}
+		appendProjects(sb, "Projects to create:", ProjectAction.CREATE);
+		appendProjects(sb, "Projects to replace:", ProjectAction.REPLACE);
+		appendProjects(sb, "Projects to connect with repositories:", ProjectAction.CONNECT);
+		if (!obsoleteProjects.isEmpty()) {
+			sb.append('\n').append("Projects not in the project set:").append('\n');
+			for (IProject project: obsoleteProjects) {
+				sb.append("  ").append(project.getName()).append('\n'); //$NON-NLS-1$
+			}
+		}
+		return sb.toString();
+	}
+
+	private void appendProjects(StringBuilder sb, String title, ProjectAction action) {
+		if (!projects.containsValue(action)) {
+			return;
+		}
+		sb.append('\n').append(title).append('\n');
+		for (Map.Entry<GpsProject, ProjectAction> entry: projects.entrySet()) {
+			if (entry.getValue() == action) {
+				sb.append("  ").append(entry.getKey().getName()).append('\n'); //$NON-NLS-1$
+			}
+		}
+	}
+
+	private static boolean isTransferring(Set<RepositoryStep> steps) {
+		return steps.contains(RepositoryStep.CLONE) || steps.contains(RepositoryStep.FETCH)
+				|| steps.contains(RepositoryStep.PULL);
+	}
+
+	private static String formatSize(long size) {
+		if (size < 1024) {
+			return size + " B"; //$NON-NLS-1$
+		} else if (size < 1024 * 1024) {
+			return MessageFormat.format("{0,number,#.#} KB", size / 1024.0); //$NON-NLS-1$
+		} else if (size < 1024 * 1024 * 1024) {
+			return MessageFormat.format("{0,number,#.#} MB", size / (1024.0 * 1024)); //$NON-NLS-1$
+		}
+		return MessageFormat.format("{0,number,#.#} GB", size / (1024.0 * 1024 * 1024)); //$NON-NLS-1$
+	}
+
+}
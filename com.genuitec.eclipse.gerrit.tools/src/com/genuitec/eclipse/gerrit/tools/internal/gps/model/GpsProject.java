@@ -13,6 +13,9 @@ package com.genuitec.eclipse.gerrit.tools.internal.gps.model;
 import static com.genuitec.eclipse.gerrit.tools.utils.XMLUtils.*;
 
 import java.text.MessageFormat;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -40,17 +43,10 @@ public class GpsProject {
 	private Set<String> workingSets = new TreeSet<String>();
 	private IGpsRepositoryHandler repositoryHandler;
 	
-	private GpsProject(IProject project) throws GpsFileException {
+	private GpsProject(IProject project, Collection<String> workingSets) throws GpsFileException {
 		name = project.getName();
-		for (IWorkingSet ws: PlatformUI.getWorkbench().getWorkingSetManager().getAllWorkingSets()) {
-			if (ws.getId() != null &&  ws.getId().equals("org.eclipse.jdt.ui.JavaWorkingSetPage")) { //$NON-NLS-1$
-				for (IAdaptable element: ws.getElements()) {
-					if (project.equals(element.getAdapter(IProject.class))) {
-						workingSets.add(ws.getName());
-						break;
-					}
-				}
-			}
+		if (workingSets != null) {
+			this.workingSets.addAll(workingSets);
 		}
 		try {
 			repositoryHandler = GpsRepositoryFactory.createHandler(project, this);
@@ -126,8 +122,17 @@ public class GpsProject {
 	}
 	
 	public static GpsProject createForProject(IProject project) throws CoreException {
+		return createForProject(project, getWorkingSetsIndex().get(project));
+	}
+	
+	/**
+	 * Creates project entry with the given working sets. Can be called from any thread.
+	 * @param workingSets names of working sets containing the project, may be <code>null</code>
+	 * @see #getWorkingSetsIndex()
+	 */
+	public static GpsProject createForProject(IProject project, Collection<String> workingSets) throws CoreException {
 		try {
-			GpsProject result = new GpsProject(project);
+			GpsProject result = new GpsProject(project, workingSets);
 			return result.repositoryHandler != null ? result : null;
 		} catch (GpsFileException ex) {
 			throw new CoreException(new Status(IStatus.ERROR, GerritToolsPlugin.PLUGIN_ID, MessageFormat.format(
@@ -135,5 +140,29 @@ public class GpsProject {
 					project.getName()), ex));
 		}
 	}
+	
+	/**
+	 * Scans Java working sets once to find working sets of all projects.
+	 * @return names of working sets keyed by projects they contain
+	 */
+	public static Map<IProject, Set<String>> getWorkingSetsIndex() {
+		Map<IProject, Set<String>> result = new HashMap<IProject, Set<String>>();
+		for (IWorkingSet ws: PlatformUI.getWorkbench().getWorkingSetManager().getAllWorkingSets()) {
+			if (ws.getId() != null &&  ws.getId().equals("org.eclipse.jdt.ui.JavaWorkingSetPage")) { //$NON-NLS-1$
+				for (IAdaptable element: ws.getElements()) {
+					IProject project = (IProject)element.getAdapter(IProject.class);
+					if (project != null) {
+						Set<String> workingSets = result.get(project);
+						if (workingSets == null) {
+							workingSets = new TreeSet<String>();
+							result.put(project, workingSets);
+						}
+						workingSets.add(ws.getName());
+					}
+				}
+			}
+		}
+		return result;
+	}
 
 }
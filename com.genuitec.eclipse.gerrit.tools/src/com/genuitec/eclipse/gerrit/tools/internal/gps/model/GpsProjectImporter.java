@@ -0,0 +1,196 @@
+/**
+ *  Copyright (c) 2015 Genuitec LLC.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Piotr Tomiak <piotr@genuitec.com> - initial API and implementation
+ */
+package com.genuitec.eclipse.gerrit.tools.internal.gps.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.egit.core.op.ConnectProviderOperation;
+
+import com.genuitec.eclipse.gerrit.tools.GerritToolsPlugin;
+import com.genuitec.eclipse.gerrit.tools.utils.ParallelTaskRunner;
+
+/**
+ * Imports many projects at once. Descriptions of projects stored in git repositories
+ * are read in parallel, projects are created and opened in batched workspace
+ * operations and connected with a single {@link ConnectProviderOperation} per
+ * repository. Projects from other repositories are imported one by one by their
+ * handlers.
+ */
+@SuppressWarnings("restriction")
+public class GpsProjectImporter {
+
+	private static final int BATCH_SIZE = 50;
+
+	private final Map<String, Object> options;
+	private final MultiStatus status = new MultiStatus(GerritToolsPlugin.PLUGIN_ID, 0,
+			"Problems occurred while importing projects", null);
+
+	public GpsProjectImporter(Map<String, Object> options) {
+		this.options = options;
+	}
+
+	/**
+	 * Imports the projects. Projects which failed to import are reported in the
+	 * thrown exception, after all other projects have been imported.
+	 *
+	 * @return imported projects, without projects which failed to import
+	 * @throws OperationCanceledException if the monitor has been cancelled
+	 */
+	public Map<GpsProject, IProject> importProjects(List<GpsProject> projects, IProgressMonitor m)
+			throws CoreException {
+		SubMonitor monitor = SubMonitor.convert(m, projects.size() * 4);
+		Map<GpsProject, IProject> result = new LinkedHashMap<GpsProject, IProject>();
+
+		List<GpsProject> gitProjects = new ArrayList<GpsProject>();
+		for (GpsProject project: projects) {
+			if (project.getRepositoryHandler() instanceof GpsGitRepositoryHandler) {
+				gitProjects.add(project);
+			} else {
+				checkCanceled(monitor);
+				monitor.setTaskName("Importing project " + project.getName());
+				IProject imported = project.getRepositoryHandler().importProject(
+						monitor.newChild(4, SubMonitor.SUPPRESS_BEGINTASK));
+				if (imported != null) {
+					result.put(project, imported);
+				}
+			}
+		}
+
+		if (!gitProjects.isEmpty()) {
+			Map<GpsProject, IProjectDescription> descriptions = loadDescriptions(
+					gitProjects, monitor.newChild(gitProjects.size()));
+			List<GpsProject> toCreate = new ArrayList<GpsProject>(descriptions.size());
+			for (GpsProject project: gitProjects) {
+				if (descriptions.containsKey(project)) {
+					toCreate.add(project);
+				}
+			}
+			SubMonitor createMonitor = monitor.newChild(gitProjects.size() * 2);
+			createMonitor.setWorkRemaining(toCreate.size());
+			Map<GpsProject, IProject> created = new LinkedHashMap<GpsProject, IProject>();
+			for (int i = 0; i < toCreate.size(); i += BATCH_SIZE) {
+				checkCanceled(monitor);
+				List<GpsProject> batch = toCreate.subList(i, Math.min(i + BATCH_SIZE, toCreate.size()));
+				createProjects(batch, descriptions, created, createMonitor.newChild(batch.size()));
+			}
+			checkCanceled(monitor);
+			connectProjects(created, monitor.newChild(gitProjects.size()));
+			result.putAll(created);
+		}
+
+		if (!status.isOK()) {
+			throw new CoreException(status);
+		}
+		return result;
+	}
+
+	private Map<GpsProject, IProjectDescription> loadDescriptions(List<GpsProject> projects,
+			SubMonitor monitor) {
+		monitor.setTaskName("Reading project descriptions...");
+		final Map<GpsProject, IProjectDescription> result =
+				new ConcurrentHashMap<GpsProject, IProjectDescription>();
+		List<ParallelTaskRunner.ITask> tasks = new ArrayList<ParallelTaskRunner.ITask>();
+		for (final GpsProject project: projects) {
+			tasks.add(new ParallelTaskRunner.ITask() {
+				public String getName() {
+					return project.getName();
+				}
+				public IStatus run(SubMonitor monitor) throws CoreException {
+					result.put(project, ((GpsGitRepositoryHandler) project.getRepositoryHandler())
+							.loadProjectDescription());
+					return null;
+				}
+			});
+		}
+		status.merge(ParallelTaskRunner.run("Cannot read project descriptions", tasks,
+				GpsGitRepositoriesConfig.getParallelism(options), monitor, 1));
+		return result;
+	}
+
+	private void createProjects(final List<GpsProject> batch,
+			final Map<GpsProject, IProjectDescription> descriptions,
+			final Map<GpsProject, IProject> created, IProgressMonitor monitor) throws CoreException {
+		final IWorkspace workspace = ResourcesPlugin.getWorkspace();
+		workspace.run(new IWorkspaceRunnable() {
+			public void run(IProgressMonitor m) throws CoreException {
+				SubMonitor monitor = SubMonitor.convert(m, batch.size() * 2);
+				for (GpsProject gpsProject: batch) {
+					checkCanceled(monitor);
+					monitor.subTask(gpsProject.getName());
+					IProject project = workspace.getRoot().getProject(gpsProject.getName());
+					try {
+						//projects, which are only to be connected, already exist
+						if (!project.exists()) {
+							project.create(descriptions.get(gpsProject), monitor.newChild(1));
+						}
+						if (!project.isOpen()) {
+							project.open(monitor.newChild(1));
+						}
+						created.put(gpsProject, project);
+					} catch (CoreException e) {
+						status.add(e.getStatus());
+					}
+				}
+			}
+		}, workspace.getRoot(), IWorkspace.AVOID_UPDATE, monitor);
+	}
+
+	private void connectProjects(Map<GpsProject, IProject> projects, SubMonitor monitor) {
+		monitor.setTaskName("Connecting projects with repositories...");
+		Map<File, Map<IProject, File>> byRepository = new LinkedHashMap<File, Map<IProject, File>>();
+		for (Map.Entry<GpsProject, IProject> entry: projects.entrySet()) {
+			try {
+				File gitDir = ((GpsGitRepositoryHandler) entry.getKey().getRepositoryHandler())
+						.getRepositoryDirectory();
+				Map<IProject, File> repoProjects = byRepository.get(gitDir);
+				if (repoProjects == null) {
+					repoProjects = new LinkedHashMap<IProject, File>();
+					byRepository.put(gitDir, repoProjects);
+				}
+				repoProjects.put(entry.getValue(), gitDir);
+			} catch (CoreException e) {
+				status.add(e.getStatus());
+			}
+		}
+		monitor.setWorkRemaining(byRepository.size());
+		for (Map<IProject, File> repoProjects: byRepository.values()) {
+			checkCanceled(monitor);
+			try {
+				new ConnectProviderOperation(repoProjects).execute(monitor.newChild(1));
+			} catch (CoreException e) {
+				status.add(e.getStatus());
+			}
+		}
+	}
+
+	private static void checkCanceled(IProgressMonitor monitor) {
+		if (monitor.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+	}
+
+}
@@ -13,6 +13,7 @@ package com.genuitec.eclipse.gerrit.tools.internal.gps.model;
 import java.util.Map;
 
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.SubMonitor;
 import org.w3c.dom.Element;
 
@@ -22,7 +23,21 @@ public interface IGpsRepositoriesConfig {
 	
 	public void serialize(Element el);
 	
-	public void performConfiguration(Map<String, Object> options, SubMonitor monitor) throws CoreException;
+	/**
+	 * Records steps needed to set up each repository in the plan.
+	 */
+	public void planConfiguration(GpsImportPlan plan, Map<String, Object> options);
+	
+	/**
+	 * Estimates amount of data transferred while cloning and fetching repositories
+	 * by contacting their remotes. Every remote is contacted once, with a short timeout.
+	 */
+	public void estimateTransfers(GpsImportPlan plan, Map<String, Object> options, IProgressMonitor monitor);
+	
+	/**
+	 * Sets up repositories performing only steps recorded in the plan.
+	 */
+	public void performConfiguration(GpsImportPlan plan, Map<String, Object> options, SubMonitor monitor) throws CoreException;
 	
 	public IGpsRepositorySetup[] getRepositoriesSetups();
 	
@@ -0,0 +1,36 @@
+/**
+ *  Copyright (c) 2015 Genuitec LLC.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Piotr Tomiak <piotr@genuitec.com> - initial API and implementation
+ */
+package com.genuitec.eclipse.gerrit.tools.internal.utils.commands;
+
+import org.eclipse.jface.action.ContributionItem;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Menu;
+import org.eclipse.swt.widgets.MenuItem;
+
+/**
+ * Disabled menu item shown while contents of a dynamic menu are being computed in background.
+ */
+public class LoadingContributionItem extends ContributionItem {
+	
+	private String label;
+	
+	public LoadingContributionItem(String label) {
+		this.label = label;
+	}
+	
+	@Override
+	public void fill(Menu menu, int index) {
+		MenuItem item = new MenuItem(menu, SWT.PUSH, index >= 0 ? index : menu.getItemCount());
+		item.setText(label);
+		item.setEnabled(false);
+	}
+	
+}
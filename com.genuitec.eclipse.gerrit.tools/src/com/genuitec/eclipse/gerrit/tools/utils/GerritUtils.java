@@ -10,10 +10,27 @@
  */
 package com.genuitec.eclipse.gerrit.tools.utils;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -31,10 +48,13 @@ import org.eclipse.mylyn.commons.net.AuthenticationCredentials;
 import org.eclipse.mylyn.commons.net.AuthenticationType;
 import org.eclipse.mylyn.internal.gerrit.core.GerritConnector;
 import org.eclipse.mylyn.internal.gerrit.core.client.GerritClient;
+import org.eclipse.mylyn.internal.gerrit.core.client.GerritException;
+import org.eclipse.mylyn.internal.gerrit.core.client.data.GerritQueryResult;
 import org.eclipse.mylyn.internal.tasks.core.IRepositoryConstants;
 import org.eclipse.mylyn.internal.tasks.core.TaskRepositoryManager;
 import org.eclipse.mylyn.internal.tasks.ui.TasksUiPlugin;
 import org.eclipse.mylyn.reviews.core.spi.ReviewsConnector;
+import org.eclipse.mylyn.tasks.core.IRepositoryListener;
 import org.eclipse.mylyn.tasks.core.TaskRepository;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.ModifyEvent;
@@ -56,6 +76,23 @@ import com.genuitec.eclipse.gerrit.tools.GerritToolsPlugin;
 public class GerritUtils {
 	
 	private static String GERRIT_REPO_KIND = "org.eclipse.mylyn.gerrit"; //$NON-NLS-1$
+	
+	private static final ConcurrentMap<String, GerritClient> clients = new ConcurrentHashMap<String, GerritClient>();
+	private static final AtomicLong clientGeneration = new AtomicLong();
+	private static final AtomicBoolean repositoryListenerRegistered = new AtomicBoolean();
+	private static final AtomicLong clientCacheHits = new AtomicLong();
+	private static final AtomicLong clientCacheMisses = new AtomicLong();
+	
+	private static final int CHANGES_PER_QUERY = 25;
+	
+	private static final long REPOSITORY_MANAGER_TIMEOUT = 60000;
+	private static final long REPOSITORY_MANAGER_WAIT_SLICE = 500;
+	private static final FutureTask<TaskRepositoryManager> repositoryManager = new FutureTask<TaskRepositoryManager>(
+			new Callable<TaskRepositoryManager>() {
+				public TaskRepositoryManager call() throws Exception {
+					return TasksUiPlugin.getRepositoryManager();
+				}
+			});
 
 	public static String getGerritProjectName(Repository repository) {
 		try {
@@ -103,7 +140,75 @@ public class GerritUtils {
 		return best;
 	}
 	
-	//, final String defaultUser
+	/**
+	 * Executes a Gerrit query using given client. Handles differences between
+	 * Mylyn Gerrit connector versions.
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<GerritQueryResult> executeQuery(GerritClient client, String query, 
+			IProgressMonitor monitor) throws GerritException {
+		try {
+			return client.getRestClient().executeQuery(monitor, query);
+		} catch (NoSuchMethodError t) {
+			try {
+				//workaround for Luna Mylyn Client
+				Method m = client.getClass().getMethod("executeQuery", IProgressMonitor.class, String.class); //$NON-NLS-1$
+				return (List<GerritQueryResult>) m.invoke(client, monitor, query);
+			} catch (InvocationTargetException e) {
+				if (e.getCause() instanceof GerritException) {
+					throw (GerritException) e.getCause();
+				}
+				throw new GerritException(e.getCause());
+			} catch (Exception e) {
+				throw new GerritException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Resolves statuses of Gerrit changes. Changes are requested with batched
+	 * <code>change:1 OR change:2 ...</code> queries, so that only a few requests
+	 * are needed even for hundreds of changes.
+	 * 
+	 * @return map of change number to change status, changes unknown to Gerrit are not included
+	 */
+	public static Map<Integer, String> getChangeStatuses(GerritClient client, Collection<Integer> changeNumbers,
+			IProgressMonitor monitor) throws GerritException {
+		List<Integer> numbers = new ArrayList<Integer>(changeNumbers);
+		int chunks = (numbers.size() + CHANGES_PER_QUERY - 1) / CHANGES_PER_QUERY;
+		SubMonitor progress = SubMonitor.convert(monitor, "Querying status of changes", chunks);
+		Map<Integer, String> result = new HashMap<Integer, String>();
+		for (int start = 0; start < numbers.size(); start += CHANGES_PER_QUERY) {
+			if (progress.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+			StringBuilder query = new StringBuilder();
+			for (Integer number: numbers.subList(start, Math.min(numbers.size(), start + CHANGES_PER_QUERY))) {
+				if (query.length() > 0) {
+					query.append(" OR "); //$NON-NLS-1$
+				}
+				query.append("change:").append(number); //$NON-NLS-1$
+			}
+			for (GerritQueryResult res: executeQuery(client, query.toString(), progress.newChild(1))) {
+				result.put(res.getNumber(), res.getStatus());
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @return number of {@link #getGerritClient(Repository, SubMonitor)} calls served from the client cache
+	 */
+	public static long getClientCacheHits() {
+		return clientCacheHits.get();
+	}
+	
+	/**
+	 * @return number of {@link #getGerritClient(Repository, SubMonitor)} calls, which required client lookup
+	 */
+	public static long getClientCacheMisses() {
+		return clientCacheMisses.get();
+	}
 	
 	public static GerritClient getGerritClient(Repository gitRepository, SubMonitor monitor) {
 		
@@ -112,37 +217,133 @@ public class GerritUtils {
 			throw new RuntimeException(MessageFormat.format("Cannot detect Gerrit URL of repository {0}", 
 					gitRepository.getDirectory().toString()));
 		}
+		String key = normalizeURL(gerritURL);
+		long generation = clientGeneration.get();
+		GerritClient client = clients.get(key);
+		if (client != null) {
+			clientCacheHits.incrementAndGet();
+			return client;
+		}
+		clientCacheMisses.incrementAndGet();
+		client = createGerritClient(gitRepository, gerritURL, monitor);
+		GerritClient existing = clients.putIfAbsent(key, client);
+		if (existing != null) {
+			//created concurrently by another thread
+			return existing;
+		}
+		if (clientGeneration.get() != generation) {
+			//repository settings have changed meanwhile, don't keep a possibly stale client
+			clients.remove(key, client);
+		}
+		return client;
+	}
+	
+	private static void invalidateClients() {
+		clientGeneration.incrementAndGet();
+		clients.clear();
+	}
+	
+	/**
+	 * Lowercases scheme and host of the URL, which are case insensitive, and removes
+	 * trailing slashes. The path is case sensitive and is kept intact.
+	 */
+	private static String normalizeURL(String url) {
+		String result = url.trim();
+		while (result.endsWith("/")) { //$NON-NLS-1$
+			result = result.substring(0, result.length() - 1);
+		}
+		try {
+			URI uri = new URI(result);
+			if (uri.getScheme() != null && uri.getHost() != null) {
+				return new URI(uri.getScheme().toLowerCase(Locale.ENGLISH), uri.getUserInfo(),
+						uri.getHost().toLowerCase(Locale.ENGLISH), uri.getPort(), uri.getPath(),
+						uri.getQuery(), uri.getFragment()).toString();
+			}
+		} catch (URISyntaxException e) {
+			//use the URL as it is
+		}
+		return result;
+	}
+	
+	/**
+	 * Starts initialization of Mylyn task repository manager in background,
+	 * so that it is ready by the time first Gerrit client is requested.
+	 */
+	public static void startRepositoryManagerInitialization() {
+		if (repositoryManager.isDone()) {
+			return;
+		}
+		Job job = new Job("Initialize Mylyn Task Repository Manager") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				repositoryManager.run();
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.schedule();
+	}
+	
+	private static TaskRepositoryManager getRepositoryManager(SubMonitor monitor) {
+		Job currentJob = Job.getJobManager().currentJob();
+		if (!repositoryManager.isDone() && currentJob == null) {
+			//no scheduling rule to release, initialize directly
+			return TasksUiPlugin.getRepositoryManager();
+		}
+		startRepositoryManagerInitialization();
+		long deadline = System.currentTimeMillis() + REPOSITORY_MANAGER_TIMEOUT;
+		try {
+			while (true) {
+				try {
+					return repositoryManager.get(REPOSITORY_MANAGER_WAIT_SLICE, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					if (monitor.isCanceled()) {
+						throw new OperationCanceledException();
+					}
+					if (System.currentTimeMillis() > deadline) {
+						throw new RuntimeException("Timed out waiting for Mylyn Task Repository Manager to initialize");
+					}
+					//initialization may require the rule held by the current job
+					currentJob.yieldRule(monitor.newChild(0));
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException("Cannot initialize Mylyn Task Repository Manager", e.getCause());
+		}
+	}
+	
+	private static GerritClient createGerritClient(Repository gitRepository, final String gerritURL, SubMonitor monitor) {
 		final String defaultUser = RepositoryUtils.getUserId(gitRepository);
 
 		monitor.beginTask("", 1);
 		monitor.subTask("locating Gerrit configuration");
 		
-		final TaskRepositoryManager[] repoManager = new TaskRepositoryManager[1];
+		final TaskRepositoryManager repoManager = getRepositoryManager(monitor);
 		
-		if (Job.getJobManager().currentJob() != null) {
-			Job mylynInitJob = new Job("Initialize Mylyn Task Repository Manager") {
-				@Override
-				protected IStatus run(IProgressMonitor monitor) {
-					repoManager[0] = TasksUiPlugin.getRepositoryManager();
-					return Status.OK_STATUS;
+		if (!repositoryListenerRegistered.getAndSet(true)) {
+			//cached clients become stale when Gerrit repository settings are changed
+			repoManager.addListener(new IRepositoryListener() {
+				public void repositoryAdded(TaskRepository repository) {
+					invalidateClients();
 				}
-			};
-			mylynInitJob.schedule();
-			while (mylynInitJob.getState() != Job.NONE) {
-				Job.getJobManager().currentJob().yieldRule(monitor.newChild(0));
-				try {
-					Thread.sleep(100);
-				} catch (InterruptedException e) {
-					//ignore
+				public void repositoryRemoved(TaskRepository repository) {
+					invalidateClients();
 				}
-			}
-		}
-		
-		if (repoManager[0] == null) {
-			repoManager[0] = TasksUiPlugin.getRepositoryManager();
+				public void repositorySettingsChanged(TaskRepository repository) {
+					invalidateClients();
+				}
+				public void repositoryUrlChanged(TaskRepository repository, String oldUrl) {
+					invalidateClients();
+				}
+			});
 		}
 		
-		Set<TaskRepository> repos = repoManager[0].getRepositories(GERRIT_REPO_KIND);
+		Set<TaskRepository> repos = repoManager.getRepositories(GERRIT_REPO_KIND);
 		
 		ReviewsConnector connector = (ReviewsConnector) TasksUiPlugin.getConnector(GERRIT_REPO_KIND);
 		
@@ -211,7 +412,7 @@ public class GerritUtils {
 			repository.setProperty(GerritConnector.KEY_REPOSITORY_OPEN_ID_PROVIDER, ""); //$NON-NLS-1$
 			
 			//add repo
-			repoManager[0].addRepository(repository);
+			repoManager.addRepository(repository);
 			
 			//get client
 			client = (GerritClient) connector.getReviewClient(repository);
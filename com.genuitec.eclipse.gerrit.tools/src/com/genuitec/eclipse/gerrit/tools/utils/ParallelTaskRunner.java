@@ -0,0 +1,263 @@
+/**
+ *  Copyright (c) 2015 Genuitec LLC.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Piotr Tomiak <piotr@genuitec.com> - initial API and implementation
+ */
+package com.genuitec.eclipse.gerrit.tools.utils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.ProgressMonitorWrapper;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.SubProgressMonitor;
+
+import com.genuitec.eclipse.gerrit.tools.GerritToolsPlugin;
+
+/**
+ * Runs a list of independent tasks on a bounded pool of worker threads.
+ * Every task reports progress through its own {@link SubMonitor}, all tasks
+ * share cancellation state of the parent monitor and failures of particular
+ * tasks are aggregated into a {@link MultiStatus} instead of aborting
+ * remaining tasks. Statuses of tasks are prefixed with task names.
+ */
+public class ParallelTaskRunner {
+
+	public static final int DEFAULT_PARALLELISM = 4;
+
+	private static final long CANCEL_POLL_INTERVAL = 200;
+
+	/**
+	 * Maximum time in milliseconds to wait for running tasks to stop after cancellation.
+	 */
+	private static final long TERMINATION_TIMEOUT = 30000;
+
+	public interface ITask {
+
+		/**
+		 * @return name of the task used in progress and status messages
+		 */
+		String getName();
+
+		/**
+		 * Performs the task. Implementation should check the monitor for cancellation
+		 * between long running steps.
+		 *
+		 * @return status of the task, or <code>null</code> if task has nothing to report
+		 */
+		IStatus run(SubMonitor monitor) throws CoreException;
+
+	}
+
+	private ParallelTaskRunner() {
+	}
+
+	/**
+	 * Runs all tasks using at most <code>parallelism</code> threads and waits
+	 * until they are finished or the monitor is cancelled.
+	 *
+	 * @param message message of the resulting status
+	 * @param tasks tasks to run
+	 * @param parallelism maximum number of tasks running at the same time
+	 * @param monitor progress monitor, which is split evenly between tasks
+	 * @param ticksPerTask amount of work each task reports to its own monitor
+	 * @return aggregated status of all tasks
+	 * @throws OperationCanceledException if the monitor has been cancelled, after running
+	 * 		tasks have stopped or {@link #TERMINATION_TIMEOUT} has passed
+	 */
+	public static MultiStatus run(String message, List<? extends ITask> tasks, int parallelism,
+			IProgressMonitor monitor, final int ticksPerTask) {
+		MultiStatus result = new MultiStatus(GerritToolsPlugin.PLUGIN_ID, 0, message, null);
+		if (tasks.isEmpty()) {
+			return result;
+		}
+		SubMonitor progress = SubMonitor.convert(monitor, tasks.size());
+		final IProgressMonitor sharedMonitor = new SynchronizedProgressMonitor(progress);
+
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Math.max(1, Math.min(parallelism, tasks.size())), new WorkerThreadFactory(message));
+		try {
+			CompletionService<IStatus> completionService = new ExecutorCompletionService<IStatus>(executor);
+			Map<Future<IStatus>, ITask> futures = new HashMap<Future<IStatus>, ITask>();
+			for (final ITask task: tasks) {
+				futures.put(completionService.submit(new Callable<IStatus>() {
+					public IStatus call() throws Exception {
+						if (sharedMonitor.isCanceled()) {
+							return Status.CANCEL_STATUS;
+						}
+						SubMonitor taskMonitor = SubMonitor.convert(new SubProgressMonitor(sharedMonitor, 1,
+								SubProgressMonitor.PREPEND_MAIN_LABEL_TO_SUBTASK), task.getName(), ticksPerTask);
+						try {
+							return task.run(taskMonitor);
+						} finally {
+							taskMonitor.done();
+						}
+					}
+				}), task);
+			}
+
+			int remaining = futures.size();
+			while (remaining > 0) {
+				if (sharedMonitor.isCanceled()) {
+					awaitTermination(executor);
+					throw new OperationCanceledException();
+				}
+				Future<IStatus> future;
+				try {
+					future = completionService.poll(CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					awaitTermination(executor);
+					throw new OperationCanceledException();
+				}
+				if (future == null) {
+					continue;
+				}
+				remaining--;
+				ITask task = futures.get(future);
+				try {
+					IStatus status = future.get();
+					if (status != null && status != Status.CANCEL_STATUS) {
+						result.add(withTaskName(task, status));
+					}
+				} catch (ExecutionException e) {
+					result.add(toStatus(task, e.getCause()));
+				} catch (InterruptedException e) {
+					awaitTermination(executor);
+					throw new OperationCanceledException();
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return result;
+	}
+
+	/**
+	 * Stops the tasks and waits until they finish, so that they don't modify anything
+	 * after the caller has been told about cancellation. Waiting stops if the current
+	 * thread is interrupted.
+	 */
+	private static void awaitTermination(ExecutorService executor) {
+		executor.shutdownNow();
+		try {
+			if (!executor.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				GerritToolsPlugin.getDefault().getLog().log(new Status(IStatus.WARNING, 
+						GerritToolsPlugin.PLUGIN_ID, "Cancelled tasks are still running.")); //$NON-NLS-1$
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static IStatus toStatus(ITask task, Throwable t) {
+		if (t instanceof CoreException) {
+			return withTaskName(task, ((CoreException) t).getStatus());
+		}
+		if (t instanceof OperationCanceledException) {
+			return Status.CANCEL_STATUS;
+		}
+		return new Status(IStatus.ERROR, GerritToolsPlugin.PLUGIN_ID,
+				task.getName() + ": " + t.getLocalizedMessage(), t); //$NON-NLS-1$
+	}
+
+	private static IStatus withTaskName(ITask task, IStatus status) {
+		if (status.isOK()) {
+			return status;
+		}
+		MultiStatus result = new MultiStatus(GerritToolsPlugin.PLUGIN_ID, status.getCode(),
+				task.getName() + ": " + status.getMessage(), null); //$NON-NLS-1$
+		result.add(status);
+		return result;
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+
+		private final String name;
+		private final AtomicInteger counter = new AtomicInteger();
+
+		public WorkerThreadFactory(String name) {
+			this.name = name;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, name + " #" + counter.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+	/**
+	 * Serializes access to the wrapped monitor, which is shared by all worker threads.
+	 */
+	private static class SynchronizedProgressMonitor extends ProgressMonitorWrapper {
+
+		public SynchronizedProgressMonitor(IProgressMonitor monitor) {
+			super(monitor);
+		}
+
+		@Override
+		public synchronized void beginTask(String name, int totalWork) {
+			super.beginTask(name, totalWork);
+		}
+
+		@Override
+		public synchronized void done() {
+			super.done();
+		}
+
+		@Override
+		public synchronized void internalWorked(double work) {
+			super.internalWorked(work);
+		}
+
+		@Override
+		public synchronized boolean isCanceled() {
+			return super.isCanceled();
+		}
+
+		@Override
+		public synchronized void setCanceled(boolean b) {
+			super.setCanceled(b);
+		}
+
+		@Override
+		public synchronized void setTaskName(String name) {
+			super.setTaskName(name);
+		}
+
+		@Override
+		public synchronized void subTask(String name) {
+			super.subTask(name);
+		}
+
+		@Override
+		public synchronized void worked(int work) {
+			super.worked(work);
+		}
+
+	}
+
+}
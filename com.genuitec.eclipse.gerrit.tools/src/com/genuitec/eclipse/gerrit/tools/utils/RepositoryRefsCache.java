@@ -0,0 +1,179 @@
+/**
+ *  Copyright (c) 2015 Genuitec LLC.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Piotr Tomiak <piotr@genuitec.com> - initial API and implementation
+ */
+package com.genuitec.eclipse.gerrit.tools.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jgit.events.ListenerHandle;
+import org.eclipse.jgit.events.RefsChangedEvent;
+import org.eclipse.jgit.events.RefsChangedListener;
+import org.eclipse.jgit.lib.Repository;
+
+import com.genuitec.eclipse.gerrit.tools.GerritToolsPlugin;
+
+/**
+ * Caches data computed from refs of a repository. Cached value of a repository
+ * is dropped as soon as JGit reports that its refs have changed.
+ * <p>
+ * Changes made outside of JGit are noticed once JGit rescans the repository,
+ * which EGit does periodically. Values can be computed in background with
+ * {@link #prefetch(Collection)}, dropped values are recomputed in background
+ * automatically.
+ *
+ * @param <T> type of the cached value
+ */
+public abstract class RepositoryRefsCache<T> {
+
+	private static final int MAX_COMPUTE_ATTEMPTS = 3;
+	private static final long PREFETCH_DELAY = 500;
+
+	private final ConcurrentMap<File, T> values = new ConcurrentHashMap<File, T>();
+	private final AtomicLong generation = new AtomicLong();
+	private final ListenerHandle listenerHandle;
+	private final Set<Repository> pendingRepositories = new LinkedHashSet<Repository>();
+	private final Job prefetchJob;
+
+	/**
+	 * @param name name of the background job computing values
+	 */
+	public RepositoryRefsCache(String name) {
+		prefetchJob = new Job(name) {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				while (!monitor.isCanceled()) {
+					List<Repository> repositories;
+					synchronized (pendingRepositories) {
+						if (pendingRepositories.isEmpty()) {
+							break;
+						}
+						repositories = new ArrayList<Repository>(pendingRepositories);
+						pendingRepositories.clear();
+					}
+					for (Repository repository: repositories) {
+						try {
+							get(repository);
+						} catch (IOException e) {
+							GerritToolsPlugin.getDefault().log(e);
+						}
+					}
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		prefetchJob.setSystem(true);
+		listenerHandle = Repository.getGlobalListenerList().addRefsChangedListener(new RefsChangedListener() {
+			public void onRefsChanged(RefsChangedEvent event) {
+				generation.incrementAndGet();
+				if (values.remove(event.getRepository().getDirectory()) != null) {
+					invalidated(event.getRepository());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Computes the value for a repository.
+	 */
+	protected abstract T compute(Repository repository) throws IOException;
+
+	/**
+	 * Called after a cached value has been dropped because refs of the repository
+	 * have changed. By default the value is recomputed in background.
+	 */
+	protected void invalidated(Repository repository) {
+		prefetch(Collections.singletonList(repository));
+	}
+
+	/**
+	 * @return <code>true</code> if values of all repositories are available without computing them
+	 */
+	public boolean isAvailable(Collection<Repository> repositories) {
+		for (Repository repository: repositories) {
+			if (getIfPresent(repository) == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Computes values of repositories in background.
+	 */
+	public void prefetch(Collection<Repository> repositories) {
+		synchronized (pendingRepositories) {
+			pendingRepositories.addAll(repositories);
+		}
+		prefetchJob.schedule(PREFETCH_DELAY);
+	}
+
+	/**
+	 * @return cached value for the repository, or <code>null</code> if the value is not computed yet
+	 */
+	public T getIfPresent(Repository repository) {
+		return values.get(repository.getDirectory());
+	}
+
+	/**
+	 * @return cached value for the repository, computing it if needed
+	 */
+	public T get(Repository repository) throws IOException {
+		File key = repository.getDirectory();
+		T value = values.get(key);
+		if (value == null) {
+			for (int attempt = 1; ; attempt++) {
+				long startGeneration = generation.get();
+				value = compute(repository);
+				//do not cache a value which might have been computed from outdated refs,
+				//reading refs for the first time after a change also triggers the event
+				if (generation.get() == startGeneration) {
+					values.put(key, value);
+					break;
+				}
+				if (attempt >= MAX_COMPUTE_ATTEMPTS) {
+					break;
+				}
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Drops all cached values.
+	 */
+	public void clear() {
+		generation.incrementAndGet();
+		values.clear();
+	}
+
+	/**
+	 * Drops all cached values and stops listening to changes of refs.
+	 */
+	public void dispose() {
+		listenerHandle.remove();
+		prefetchJob.cancel();
+		clear();
+	}
+
+}
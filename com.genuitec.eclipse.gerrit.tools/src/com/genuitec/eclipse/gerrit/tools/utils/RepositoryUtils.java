@@ -13,15 +13,27 @@ package com.genuitec.eclipse.gerrit.tools.utils;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.SubProgressMonitor;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
+import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.egit.core.RepositoryCache;
 import org.eclipse.egit.core.RepositoryUtil;
+import org.eclipse.egit.core.op.FetchOperation;
 import org.eclipse.egit.ui.internal.credentials.EGitCredentialsProvider;
-import org.eclipse.egit.ui.internal.fetch.FetchOperationUI;
 import org.eclipse.egit.ui.internal.repository.tree.RepositoryTreeNode;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.dialogs.ProgressMonitorDialog;
@@ -32,7 +44,9 @@ import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.eclipse.jgit.transport.FetchResult;
 import org.eclipse.jgit.transport.RemoteConfig;
+import org.eclipse.jgit.transport.URIish;
 import org.eclipse.jgit.util.FS;
 import org.eclipse.jgit.util.StringUtils;
 import org.eclipse.jgit.util.SystemReader;
@@ -45,44 +59,109 @@ import com.genuitec.eclipse.gerrit.tools.GerritToolsPlugin;
 @SuppressWarnings("restriction")
 public class RepositoryUtils {
 
+	/**
+	 * Preference holding maximum number of repositories fetched at the same time.
+	 */
+	public static final String PREF_FETCH_PARALLELISM = "fetch.parallelism"; //$NON-NLS-1$
+	
+	private static final String FETCH_ORIGIN_MESSAGE = "Fetching updates from origin";
+
 	private static final RepositoryCache repositoryCache = org.eclipse.egit.core.Activator
 			.getDefault().getRepositoryCache();
 	private static final RepositoryUtil repositoryUtil = org.eclipse.egit.ui.Activator.getDefault()
 			.getRepositoryUtil();
 
-	public static List<Repository> getAllRepositories() {
-		List<Repository> result = new ArrayList<Repository>();
-		for (String repo: repositoryUtil.getConfiguredRepositories()) {
-			File gitDir = new File(repo);
-			if (gitDir.exists()) {
-				try {
-					Repository repository = repositoryCache.lookupRepository(gitDir);
-					if (!repository.isBare()) {
-						result.add(repository);
+	/**
+	 * Configured repositories, indexed by name. Rebuilt lazily after the list 
+	 * of repositories configured in EGit changes.
+	 */
+	private static volatile RepositoryIndex repositoryIndex;
+	
+	static {
+		InstanceScope.INSTANCE.getNode(org.eclipse.egit.core.Activator.getPluginId())
+				.addPreferenceChangeListener(new IPreferenceChangeListener() {
+			@Override
+			public void preferenceChange(PreferenceChangeEvent event) {
+				if (RepositoryUtil.PREFS_DIRECTORIES_REL.equals(event.getKey())) {
+					//wait for index being built from the previous configuration
+					synchronized (RepositoryUtils.class) {
+						repositoryIndex = null;
 					}
-				} catch (IOException e) {
-					//ignore
 				}
 			}
+		});
+	}
+
+	public static List<Repository> getAllRepositories() {
+		List<Repository> result = new ArrayList<Repository>();
+		for (File gitDir: getRepositoryIndex().gitDirs) {
+			Repository repository = lookupRepository(gitDir);
+			if (repository != null) {
+				result.add(repository);
+			}
 		}
 		return result;
 	}
 	
 	public static Repository getRepositoryForName(String name) {
-		for (String repo: repositoryUtil.getConfiguredRepositories()) {
-			File gitDir = new File(repo);
-			if (gitDir.exists()) {
-				try {
-					Repository repository = repositoryCache.lookupRepository(gitDir);
-					if (!repository.isBare() && repository.getDirectory().getParentFile().getName().equals(name)) {
-						return repository;
+		File gitDir = getRepositoryIndex().byName.get(name);
+		if (gitDir != null && !gitDir.exists()) {
+			//repository has been removed from disk
+			repositoryIndex = null;
+			gitDir = getRepositoryIndex().byName.get(name);
+		}
+		return gitDir != null ? lookupRepository(gitDir) : null;
+	}
+	
+	private static Repository lookupRepository(File gitDir) {
+		if (!gitDir.exists()) {
+			return null;
+		}
+		try {
+			return repositoryCache.lookupRepository(gitDir);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+	
+	private static RepositoryIndex getRepositoryIndex() {
+		RepositoryIndex index = repositoryIndex;
+		if (index == null) {
+			synchronized (RepositoryUtils.class) {
+				index = repositoryIndex;
+				if (index == null) {
+					index = new RepositoryIndex();
+					repositoryIndex = index;
+				}
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * Git directories of configured non-bare repositories. Repositories are resolved
+	 * through EGit's repository cache on every lookup, so that the index doesn't keep 
+	 * repositories open after they are removed from EGit.
+	 */
+	private static class RepositoryIndex {
+		
+		private final List<File> gitDirs = new ArrayList<File>();
+		private final Map<String, File> byName = new HashMap<String, File>();
+		
+		public RepositoryIndex() {
+			for (String repo: repositoryUtil.getConfiguredRepositories()) {
+				Repository repository = lookupRepository(new File(repo));
+				if (repository != null && !repository.isBare()) {
+					File gitDir = repository.getDirectory();
+					gitDirs.add(gitDir);
+					String name = gitDir.getParentFile().getName();
+					if (!byName.containsKey(name)) {
+						byName.put(name, gitDir);
 					}
-				} catch (IOException e) {
-					//ignore
 				}
 			}
 		}
-		return null;
+		
 	}
 	
 	public static String getUserId(List<Repository> repositories) {
@@ -184,10 +263,9 @@ public class RepositoryUtils {
 						InterruptedException {
 					try {
 						monitor.beginTask("Fetching updates from origin", 100);
-						FetchOperationUI fetchOp = new FetchOperationUI(repository, 
-								new RemoteConfig(repository.getConfig(), "origin"), false); //$NON-NLS-1$
-						fetchOp.setCredentialsProvider(new EGitCredentialsProvider());
-						fetchOp.execute(new SubProgressMonitor(monitor, 100));
+						fetchOrigin(repository, new SubProgressMonitor(monitor, 100));
+					} catch (OperationCanceledException e) {
+						throw new InterruptedException();
 					} catch (Exception e) {
 						throw new InvocationTargetException(e);
 					}
@@ -199,4 +277,105 @@ public class RepositoryUtils {
         	RepositoryUtils.handleException(e);
         }
 	}
+	
+	/**
+	 * Fetches updates from origin of the repository. Timeout and retries of the fetch
+	 * are controlled by {@link TransportPolicy}.
+	 */
+	public static FetchResult fetchOrigin(final Repository repository, final IProgressMonitor monitor) throws Exception {
+		final RemoteConfig config = new RemoteConfig(repository.getConfig(), "origin"); //$NON-NLS-1$
+		List<URIish> uris = config.getURIs();
+		return TransportPolicy.execute("Fetch of " + repository.getDirectory().getParentFile().getName(), //$NON-NLS-1$
+				TransportPolicy.getTimeout(uris.isEmpty() ? null : uris.get(0)), monitor, 
+				new TransportPolicy.ITransportOperation<FetchResult>() {
+					public FetchResult run(int timeout) throws Exception {
+						FetchOperation fetchOp = new FetchOperation(repository, config, timeout, false);
+						fetchOp.setCredentialsProvider(new EGitCredentialsProvider());
+						fetchOp.run(monitor);
+						return fetchOp.getOperationResult();
+					}
+				});
+	}
+	
+	/**
+	 * Fetches updates from origin of all given repositories in parallel, within a single
+	 * progress dialog. Maximum number of concurrent fetches is read from 
+	 * {@link #PREF_FETCH_PARALLELISM} preference.
+	 * 
+	 * @return results of fetch per repository
+	 */
+	public static MultiStatus fetchOrigin(Shell shell, List<Repository> repositories) {
+		return fetchOrigin(shell, repositories, InstanceScope.INSTANCE.getNode(GerritToolsPlugin.PLUGIN_ID)
+				.getInt(PREF_FETCH_PARALLELISM, ParallelTaskRunner.DEFAULT_PARALLELISM));
+	}
+
+	/**
+	 * Fetches updates from origin of all given repositories in parallel, within a single
+	 * progress dialog.
+	 * 
+	 * @param parallelism maximum number of concurrent fetches
+	 * @return results of fetch per repository; if the operation has been cancelled, 
+	 * 		status with {@link IStatus#CANCEL} severity is returned 
+	 */
+	public static MultiStatus fetchOrigin(Shell shell, List<Repository> repositories, final int parallelism) {
+		final List<FetchOriginTask> tasks = new ArrayList<FetchOriginTask>();
+		for (Repository repository: repositories) {
+			tasks.add(new FetchOriginTask(repository));
+		}
+		final MultiStatus[] result = new MultiStatus[] { 
+				new MultiStatus(GerritToolsPlugin.PLUGIN_ID, 0, FETCH_ORIGIN_MESSAGE, null) };
+		try {
+			ProgressMonitorDialog progressDialog = new ProgressMonitorDialog(shell);
+			progressDialog.run(true, true, new IRunnableWithProgress() {
+				
+				@Override
+				public void run(IProgressMonitor monitor) throws InvocationTargetException,
+						InterruptedException {
+					try {
+						result[0] = ParallelTaskRunner.run(FETCH_ORIGIN_MESSAGE, tasks, parallelism, monitor, 100);
+					} catch (OperationCanceledException e) {
+						throw new InterruptedException();
+					}
+				}
+			});
+		} catch (InterruptedException e) {
+			result[0].add(Status.CANCEL_STATUS);
+		} catch (InvocationTargetException e) {
+			result[0].add(new Status(IStatus.ERROR, GerritToolsPlugin.PLUGIN_ID, 
+					e.getCause().getLocalizedMessage(), e.getCause()));
+		}
+		return result[0];
+	}
+	
+	private static class FetchOriginTask implements ParallelTaskRunner.ITask {
+		
+		private final Repository repository;
+		
+		public FetchOriginTask(Repository repository) {
+			this.repository = repository;
+		}
+		
+		@Override
+		public String getName() {
+			return repository.getDirectory().getParentFile().getName();
+		}
+		
+		@Override
+		public IStatus run(SubMonitor monitor) throws CoreException {
+			try {
+				FetchResult fetchResult = fetchOrigin(repository, monitor.newChild(100));
+				return new Status(IStatus.OK, GerritToolsPlugin.PLUGIN_ID, MessageFormat.format(
+						"{0}: {1} refs updated", getName(), fetchResult.getTrackingRefUpdates().size()));
+			} catch (CoreException e) {
+				throw e;
+			} catch (OperationCanceledException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new CoreException(new Status(IStatus.ERROR, GerritToolsPlugin.PLUGIN_ID, 
+						getName() + ": " + e.getLocalizedMessage(), e)); //$NON-NLS-1$
+			}
+		}
+		
+	}
+	
 }
@@ -0,0 +1,221 @@
+/**
+ *  Copyright (c) 2015 Genuitec LLC.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Piotr Tomiak <piotr@genuitec.com> - initial API and implementation
+ */
+package com.genuitec.eclipse.gerrit.tools.utils;
+
+import java.io.EOFException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.SocketException;
+import java.net.URISyntaxException;
+import java.text.MessageFormat;
+import java.util.List;
+import java.util.Locale;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.jgit.api.errors.TransportException;
+import org.eclipse.jgit.errors.NoRemoteRepositoryException;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.RemoteConfig;
+import org.eclipse.jgit.transport.URIish;
+
+import com.genuitec.eclipse.gerrit.tools.GerritToolsPlugin;
+
+/**
+ * Provides timeouts and retries of fetch, clone and pull operations. Operations
+ * with remote repositories use timeout read from preferences, while operations with
+ * repositories on local file system have no timeout. Operations failing because
+ * of a broken or timed out connection are retried with exponential backoff, and
+ * the timeout is doubled for every retry.
+ */
+public final class TransportPolicy {
+
+	/**
+	 * Preference holding timeout of remote operations in seconds.
+	 */
+	public static final String PREF_TIMEOUT = "transport.timeout"; //$NON-NLS-1$
+	public static final int DEFAULT_TIMEOUT = 60;
+
+	/**
+	 * Preference holding maximum number of attempts to perform a remote operation.
+	 */
+	public static final String PREF_MAX_ATTEMPTS = "transport.maxAttempts"; //$NON-NLS-1$
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+	/**
+	 * Preference holding delay before the first retry in milliseconds. The delay
+	 * is doubled for every next retry.
+	 */
+	public static final String PREF_RETRY_DELAY = "transport.retryDelay"; //$NON-NLS-1$
+	public static final long DEFAULT_RETRY_DELAY = 2000;
+
+	private static final long CANCEL_POLL_INTERVAL = 100;
+
+	private static final String[] TRANSIENT_MESSAGES = new String[] {
+		"timed out", //$NON-NLS-1$
+		"timeout", //$NON-NLS-1$
+		"connection reset", //$NON-NLS-1$
+		"connection refused", //$NON-NLS-1$
+		"broken pipe", //$NON-NLS-1$
+		"unexpected end of", //$NON-NLS-1$
+		"premature eof", //$NON-NLS-1$
+	};
+
+	/**
+	 * Remote operation performed with a given timeout.
+	 *
+	 * @param <T> type of the result
+	 */
+	public interface ITransportOperation<T> {
+
+		/**
+		 * @param timeout timeout in seconds, 0 means no timeout
+		 */
+		T run(int timeout) throws Exception;
+
+	}
+
+	/**
+	 * @return timeout in seconds for operations with the given remote, 0 if there should be no timeout
+	 */
+	public static int getTimeout(URIish uri) {
+		if (uri == null || isLocal(uri)) {
+			return 0;
+		}
+		return Math.max(0, getPreferences().getInt(PREF_TIMEOUT, DEFAULT_TIMEOUT));
+	}
+
+	/**
+	 * @return timeout in seconds for operations with the given remote of the repository
+	 */
+	public static int getTimeout(Repository repository, String remote) {
+		try {
+			List<URIish> uris = new RemoteConfig(repository.getConfig(), remote).getURIs();
+			return getTimeout(uris.isEmpty() ? null : uris.get(0));
+		} catch (URISyntaxException e) {
+			return getTimeout((URIish) null);
+		}
+	}
+
+	/**
+	 * Runs the operation, retrying it if it fails because of a transient connection problem.
+	 *
+	 * @param name name of the operation used in log messages
+	 * @param timeout timeout of the first attempt in seconds, 0 means no timeout
+	 * @throws OperationCanceledException if the monitor is cancelled while waiting for a retry
+	 */
+	public static <T> T execute(String name, int timeout, IProgressMonitor monitor,
+			ITransportOperation<T> operation) throws Exception {
+		IEclipsePreferences prefs = getPreferences();
+		int maxAttempts = Math.max(1, prefs.getInt(PREF_MAX_ATTEMPTS, DEFAULT_MAX_ATTEMPTS));
+		long delay = Math.max(0, prefs.getLong(PREF_RETRY_DELAY, DEFAULT_RETRY_DELAY));
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return operation.run(timeout);
+			} catch (Exception e) {
+				if (attempt >= maxAttempts || monitor.isCanceled() || !isTransient(e)) {
+					throw e;
+				}
+				GerritToolsPlugin.getDefault().log(MessageFormat.format(
+						"{0} failed (attempt {1} of {2}), retrying in {3} ms", //$NON-NLS-1$
+						name, attempt, maxAttempts, delay), e);
+			}
+			sleep(delay, monitor);
+			delay *= 2;
+			if (timeout > 0) {
+				timeout *= 2;
+			}
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the failure is caused by a broken or timed out connection
+	 */
+	public static boolean isTransient(Throwable t) {
+		for (Throwable cause = t; cause != null; cause = getCause(cause)) {
+			if (cause instanceof NoRemoteRepositoryException) {
+				return false;
+			}
+			if (cause instanceof InterruptedIOException
+					|| cause instanceof SocketException
+					|| cause instanceof EOFException) {
+				return true;
+			}
+			if ((cause instanceof TransportException
+					|| cause instanceof org.eclipse.jgit.errors.TransportException
+					|| cause instanceof CoreException)
+					&& isTransientMessage(cause.getMessage())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return <code>true</code> if the error message reported by a transport
+	 * 		operation denotes a broken or timed out connection
+	 */
+	public static boolean isTransientMessage(String message) {
+		if (message == null) {
+			return false;
+		}
+		String msg = message.toLowerCase(Locale.ENGLISH);
+		for (String pattern: TRANSIENT_MESSAGES) {
+			if (msg.contains(pattern)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Throwable getCause(Throwable t) {
+		if (t instanceof CoreException) {
+			return ((CoreException) t).getStatus().getException();
+		} else if (t instanceof InvocationTargetException) {
+			return ((InvocationTargetException) t).getTargetException();
+		}
+		return t.getCause() != t ? t.getCause() : null;
+	}
+
+	private static boolean isLocal(URIish uri) {
+		String scheme = uri.getScheme();
+		return (scheme == null && uri.getHost() == null) || "file".equals(scheme); //$NON-NLS-1$
+	}
+
+	private static void sleep(long delay, IProgressMonitor monitor) {
+		long end = System.currentTimeMillis() + delay;
+		long remaining;
+		while ((remaining = end - System.currentTimeMillis()) > 0) {
+			if (monitor.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+			try {
+				Thread.sleep(Math.min(remaining, CANCEL_POLL_INTERVAL));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OperationCanceledException();
+			}
+		}
+		if (monitor.isCanceled()) {
+			throw new OperationCanceledException();
+		}
+	}
+
+	private static IEclipsePreferences getPreferences() {
+		return InstanceScope.INSTANCE.getNode(GerritToolsPlugin.PLUGIN_ID);
+	}
+
+	private TransportPolicy() {}
+
+}
@@ -10,10 +10,20 @@
  */
 package com.genuitec.eclipse.gerrit.tools.utils;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
@@ -72,4 +82,79 @@ public class XMLUtils {
 	public static void reportOneChildAllowed(Element parent, String child) throws XmlException {
 		throw new XmlException("Each <{0}> element can have only one <{1}> element.", parent.getNodeName(), child);
 	}
+	
+	/**
+	 * Reads the element at which the reader is positioned, together with its
+	 * attributes, text and child elements. The element is created in the given
+	 * document, but it is not appended to it, so each fragment of a large file
+	 * can be processed and dropped independently. On return the reader is positioned
+	 * at the end of the element.
+	 */
+	public static Element readElement(XMLStreamReader reader, Document document) throws XMLStreamException {
+		Element element = document.createElement(reader.getLocalName());
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			element.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+		}
+		while (reader.hasNext()) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				element.appendChild(readElement(reader, document));
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				element.appendChild(document.createTextNode(reader.getText()));
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				return element;
+			}
+		}
+		return element;
+	}
+	
+	/**
+	 * Writes the element in a compact binary form, which can be read back with
+	 * {@link #readBinaryElement(DataInput, Document)} without XML parsing. Only
+	 * attributes, child elements and text of leaf elements are preserved.
+	 */
+	public static void writeBinaryElement(DataOutput out, Element element) throws IOException {
+		out.writeUTF(element.getNodeName());
+		NamedNodeMap attributes = element.getAttributes();
+		out.writeInt(attributes.getLength());
+		for (int i = 0; i < attributes.getLength(); i++) {
+			Attr attr = (Attr)attributes.item(i);
+			out.writeUTF(attr.getName());
+			out.writeUTF(attr.getValue());
+		}
+		List<Element> children = getChildElements(element.getChildNodes());
+		out.writeInt(children.size());
+		if (children.isEmpty()) {
+			String text = element.getTextContent();
+			out.writeUTF(text != null ? text : ""); //$NON-NLS-1$
+		} else {
+			for (Element child: children) {
+				writeBinaryElement(out, child);
+			}
+		}
+	}
+	
+	public static Element readBinaryElement(DataInput in, Document document) throws IOException {
+		Element element = document.createElement(in.readUTF());
+		for (int i = in.readInt(); i > 0; i--) {
+			element.setAttribute(in.readUTF(), in.readUTF());
+		}
+		int children = in.readInt();
+		if (children == 0) {
+			String text = in.readUTF();
+			if (text.length() > 0) {
+				element.appendChild(document.createTextNode(text));
+			}
+		} else {
+			for (int i = 0; i < children; i++) {
+				element.appendChild(readBinaryElement(in, document));
+			}
+		}
+		return element;
+	}
+	
 }